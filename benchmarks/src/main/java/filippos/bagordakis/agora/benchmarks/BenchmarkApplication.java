@@ -0,0 +1,43 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+
+import filippos.bagordakis.agora.config.OpenAgora;
+
+/**
+ * Smallest application using Agora: the {@link BenchmarkStoa} proxy and the
+ * {@link BenchmarkKrypteias} handlers. The client always dials port 12345, so
+ * benchmarks start their {@link filippos.bagordakis.agora.loopback.LoopbackAgoraServer}
+ * there.
+ */
+@Configuration
+@OpenAgora
+public class BenchmarkApplication {
+
+	public static final int PORT = 12345;
+
+	public static AnnotationConfigApplicationContext start(Map<String, Object> properties) {
+		return start(properties, null);
+	}
+
+	public static AnnotationConfigApplicationContext start(Map<String, Object> properties, ClassLoader classLoader) {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		if (classLoader != null) {
+			context.setClassLoader(classLoader);
+		}
+		Map<String, Object> defaults = new HashMap<>();
+		defaults.put("agora.outbox.directory", System.getProperty("java.io.tmpdir") + "/agora-benchmarks-outbox");
+		defaults.put("agora.metrics.jmx", "false");
+		defaults.putAll(properties);
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", defaults));
+		context.register(BenchmarkApplication.class, BenchmarkKrypteias.class);
+		context.refresh();
+		return context;
+	}
+
+}
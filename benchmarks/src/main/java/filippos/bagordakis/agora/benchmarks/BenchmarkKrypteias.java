@@ -0,0 +1,27 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import filippos.bagordakis.agora.kripteia.Kripteia;
+import filippos.bagordakis.agora.kripteia.Krypteias;
+
+@Krypteias
+public class BenchmarkKrypteias {
+
+	private final LongAdder fired = new LongAdder();
+
+	@Kripteia("bench.fire")
+	public void fire(Payload payload) {
+		fired.increment();
+	}
+
+	@Kripteia("bench.echo")
+	public Payload echo(Payload payload) {
+		return payload;
+	}
+
+	public long getFired() {
+		return fired.sum();
+	}
+
+}
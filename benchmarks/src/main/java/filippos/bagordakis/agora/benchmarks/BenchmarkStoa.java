@@ -0,0 +1,17 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+
+import filippos.bagordakis.agora.stoa.annotation.Dose;
+import filippos.bagordakis.agora.stoa.annotation.Stoa;
+
+@Stoa
+public interface BenchmarkStoa {
+
+	@Dose("bench.fire")
+	void fire(Payload payload);
+
+	@Dose(value = "bench.echo", timeout = 10000)
+	CompletableFuture<Payload> echo(Payload payload);
+
+}
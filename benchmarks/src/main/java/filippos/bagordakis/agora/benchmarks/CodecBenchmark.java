@@ -0,0 +1,115 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import filippos.bagordakis.agora.agora.codec.AgoraCompression;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameBuffer;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameWriter;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.agora.codec.SerializationAgoraCodec;
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.enums.CompressionTypesEnum;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.HeartbeatDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Cost of turning each kind of frame into bytes and back. The java
+ * serialization codec is only measured writing, its reader cannot be fed one
+ * frame at a time.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodecBenchmark {
+
+	@Param({ "REQUEST", "RESPONSE", "ACKNOWLEDGMENT_BATCH", "HEARTBEAT" })
+	public String type;
+
+	@Param({ "64", "16384" })
+	public int payloadSize;
+
+	@Param({ "false", "true" })
+	public boolean compressed;
+
+	private BaseDTO dto;
+	private BinaryAgoraCodec codec;
+	private final AgoraFrameBuffer frame = new AgoraFrameBuffer();
+	private ByteBuffer encoded;
+	private AgoraFrameWriter serializationWriter;
+
+	@Setup
+	public void setUp() throws IOException {
+		// Repetitive json, as real payloads are
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; json.length() < payloadSize; i++) {
+			json.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+		}
+		json.setLength(Math.max(1, payloadSize - 1));
+		json.append(']');
+
+		dto = switch (type) {
+		case "REQUEST" -> new RequestDTO(UUID.randomUUID(), "bench.echo", List.of("target"), json.toString());
+		case "RESPONSE" -> new ResponseDTO(UUID.randomUUID(), "bench.echo", null, json.toString(),
+				UUID.randomUUID(), null);
+		case "ACKNOWLEDGMENT_BATCH" -> {
+			long[] ids = new long[256];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = UUID.randomUUID().getMostSignificantBits();
+			}
+			yield new AcknowledgmentBatchDTO(UUID.randomUUID(), ids);
+		}
+		default -> HeartbeatDTO.newInstance();
+		};
+
+		AgoraCompression compression = new AgoraCompression(
+				compressed ? CompressionTypesEnum.DEFLATE : CompressionTypesEnum.NONE, 1024, 1);
+		compression.negotiate(List.of(CompressionTypesEnum.DEFLATE.name()));
+		codec = new BinaryAgoraCodec(compression);
+
+		codec.encodeFrame(dto, frame);
+		byte[] bytes = new byte[frame.size() - Integer.BYTES];
+		System.arraycopy(frame.array(), Integer.BYTES, bytes, 0, bytes.length);
+		encoded = ByteBuffer.wrap(bytes);
+
+		serializationWriter = new SerializationAgoraCodec().newWriter(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public int binaryEncode() throws IOException {
+		codec.encodeFrame(dto, frame);
+		return frame.size();
+	}
+
+	@Benchmark
+	public BaseDTO binaryDecode() throws IOException {
+		return codec.decode(encoded.duplicate());
+	}
+
+	@Benchmark
+	public int serializationEncode() throws IOException {
+		return serializationWriter.write(dto);
+	}
+
+}
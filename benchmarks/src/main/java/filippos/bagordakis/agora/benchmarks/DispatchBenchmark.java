@@ -0,0 +1,117 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import filippos.bagordakis.agora.agora.Agora;
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.agora.data.event.AgoraEvent;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.kripteia.KrypteiaInvoker;
+import filippos.bagordakis.agora.kripteia.KrypteiaInvokers;
+
+/**
+ * Overhead between the network and user code. The handler side compares the
+ * generated invoker with reflection, reading the payload from bytes and from a
+ * string. The caller side compares a {@code @Dose} call, with and without
+ * publishing its observation event, with handing the same request to
+ * {@link Agora#send} directly and with publishing it as an {@link AgoraEvent}
+ * for Agora to pick up, the path calls took before they went straight to
+ * Agora. No server is running and the queue drops its oldest entries, so only
+ * the calling thread is measured.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DispatchBenchmark {
+
+	private static final String JSON = "{\"sequence\":7,\"body\":\"hello\"}";
+
+	@Param({ "false", "true" })
+	public boolean publishEvents;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final BenchmarkKrypteias bean = new BenchmarkKrypteias();
+	private Method method;
+	private KrypteiaInvoker invoker;
+	private RequestDTO stringRequest;
+	private RequestDTO rawRequest;
+
+	private AnnotationConfigApplicationContext context;
+	private BenchmarkStoa stoa;
+	private Agora agora;
+	private final Payload payload = new Payload(7, "hello");
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		method = BenchmarkKrypteias.class.getMethod("echo", Payload.class);
+		invoker = KrypteiaInvokers.create(bean, method, objectMapper);
+		stringRequest = new RequestDTO(UUID.randomUUID(), "bench.echo", null, JSON);
+		rawRequest = new RawRequestDTO(UUID.randomUUID(), "bench.echo", null, JSON.getBytes(StandardCharsets.UTF_8));
+
+		context = BenchmarkApplication.start(Map.of("agora.queue.overflow", "DROP_OLDEST", "agora.queue.capacity",
+				"1024", "agora.stoa.publish-events", String.valueOf(publishEvents)));
+		stoa = context.getBean(BenchmarkStoa.class);
+		agora = context.getBean(Agora.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Object reflectiveInvoke() throws Exception {
+		return method.invoke(bean, objectMapper.readValue(stringRequest.getJsonData(), Payload.class));
+	}
+
+	@Benchmark
+	public Object invokerFromString() throws Exception {
+		return invoker.invoke(stringRequest);
+	}
+
+	@Benchmark
+	public Object invokerFromBytes() throws Exception {
+		return invoker.invoke(rawRequest);
+	}
+
+	@Benchmark
+	public void doseCall() {
+		stoa.fire(payload);
+	}
+
+	@Benchmark
+	public void directSend() throws Exception {
+		agora.send(new RequestDTO(UUID.randomUUID(), "bench.fire", null, objectMapper.writeValueAsString(payload)),
+				false);
+	}
+
+	@Benchmark
+	public void eventBus() {
+		context.publishEvent(new AgoraEvent(this, payload, "bench.fire", null));
+	}
+
+}
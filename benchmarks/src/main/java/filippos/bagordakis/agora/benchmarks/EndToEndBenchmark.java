@@ -0,0 +1,104 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import filippos.bagordakis.agora.loopback.LoopbackAgoraServer;
+
+/**
+ * {@code @Dose} to {@code @Kripteia} and back over a real socket. The loopback
+ * server echoes every request, so each one is sent, handled by this same
+ * process and, for {@link BenchmarkStoa#echo}, answered with a reply that is
+ * echoed back too.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EndToEndBenchmark {
+
+	private static final int PIPELINE = 1000;
+
+	@Param({ "BLOCKING", "NIO" })
+	public String transport;
+
+	@Param({ "64", "4096" })
+	public int payloadSize;
+
+	private LoopbackAgoraServer server;
+	private AnnotationConfigApplicationContext context;
+	private BenchmarkStoa stoa;
+	private BenchmarkKrypteias krypteias;
+	private Payload payload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new LoopbackAgoraServer(BenchmarkApplication.PORT, true).start();
+		context = BenchmarkApplication.start(Map.of("agora.transport", transport));
+		stoa = context.getBean(BenchmarkStoa.class);
+		krypteias = context.getBean(BenchmarkKrypteias.class);
+		payload = Payload.of(payloadSize);
+		// The first round trip waits for the connection
+		stoa.echo(payload).get(30, TimeUnit.SECONDS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		context.close();
+		server.close();
+	}
+
+	/**
+	 * Latency of a single request-reply, percentiles come with the sample mode.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Payload requestReply() {
+		return stoa.echo(payload).join();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(PIPELINE)
+	public void pipelinedRequestReply() {
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[PIPELINE];
+		for (int i = 0; i < PIPELINE; i++) {
+			futures[i] = stoa.echo(payload);
+		}
+		CompletableFuture.allOf(futures).join();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(PIPELINE)
+	public void fireAndForget() throws InterruptedException {
+		long target = krypteias.getFired() + PIPELINE;
+		for (int i = 0; i < PIPELINE; i++) {
+			stoa.fire(payload);
+		}
+		while (krypteias.getFired() < target) {
+			Thread.onSpinWait();
+		}
+	}
+
+}
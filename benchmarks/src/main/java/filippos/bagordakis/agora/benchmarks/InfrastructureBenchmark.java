@@ -0,0 +1,83 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import filippos.bagordakis.agora.agora.outbox.AgoraOutbox;
+import filippos.bagordakis.agora.agora.retransmit.AgoraTimerWheel;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * The pieces every request passes through on its way out: arming and
+ * cancelling its retransmit timer, and journaling it when it is durable.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InfrastructureBenchmark {
+
+	@Param({ "0", "5" })
+	public long syncInterval;
+
+	private AgoraTimerWheel<Object> wheel;
+	private AgoraOutbox outbox;
+	private Path directory;
+	private final Object item = new Object();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		wheel = new AgoraTimerWheel<>(512, 10, x -> {
+		}, "bench-wheel");
+		wheel.start();
+		directory = Files.createTempDirectory("agora-outbox-bench");
+		outbox = new AgoraOutbox(directory, 16 * 1024 * 1024, syncInterval);
+		outbox.open();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		wheel.stop();
+		outbox.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public boolean retransmitTimer() {
+		return wheel.cancel(wheel.schedule(item, TimeUnit.SECONDS.toNanos(1)));
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void durableAppend() throws IOException {
+		RequestDTO requestDTO = new RequestDTO(UUID.randomUUID(), "bench.fire", null,
+				"{\"sequence\":7,\"body\":\"hello\"}");
+		outbox.append(requestDTO);
+		outbox.complete(requestDTO.getId());
+	}
+
+}
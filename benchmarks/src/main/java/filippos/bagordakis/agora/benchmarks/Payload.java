@@ -0,0 +1,9 @@
+package filippos.bagordakis.agora.benchmarks;
+
+public record Payload(long sequence, String body) {
+
+	public static Payload of(int size) {
+		return new Payload(0, "x".repeat(size));
+	}
+
+}
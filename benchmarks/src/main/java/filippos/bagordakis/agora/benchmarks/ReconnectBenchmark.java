@@ -0,0 +1,70 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import filippos.bagordakis.agora.loopback.LoopbackAgoraServer;
+
+/**
+ * Time from the server dropping the connection until a request-reply goes
+ * through again.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class ReconnectBenchmark {
+
+	@Param({ "BLOCKING", "NIO" })
+	public String transport;
+
+	private LoopbackAgoraServer server;
+	private AnnotationConfigApplicationContext context;
+	private BenchmarkStoa stoa;
+	private final Payload payload = Payload.of(64);
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new LoopbackAgoraServer(BenchmarkApplication.PORT, true).start();
+		context = BenchmarkApplication.start(Map.of("agora.transport", transport));
+		stoa = context.getBean(BenchmarkStoa.class);
+		stoa.echo(payload).get(30, TimeUnit.SECONDS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		context.close();
+		server.close();
+	}
+
+	@Benchmark
+	public Payload recover() throws Exception {
+		server.dropClients();
+		while (true) {
+			try {
+				return stoa.echo(payload).orTimeout(100, TimeUnit.MILLISECONDS).join();
+			} catch (CompletionException e) {
+				// Not reconnected yet
+			}
+		}
+	}
+
+}
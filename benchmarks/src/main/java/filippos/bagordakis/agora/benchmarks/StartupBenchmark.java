@@ -0,0 +1,61 @@
+package filippos.bagordakis.agora.benchmarks;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import filippos.bagordakis.agora.index.AgoraIndex;
+
+/**
+ * Time to start and stop an application context with Agora in it, reading the
+ * stoas and krypteias from the compile time index or, with it hidden, scanning
+ * the class path for them.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean index;
+
+	@Benchmark
+	public void startAndStop() {
+		ClassLoader classLoader = index ? null : new HidingClassLoader(getClass().getClassLoader());
+		try (AnnotationConfigApplicationContext context = BenchmarkApplication.start(Map.of(), classLoader)) {
+			context.getBean(BenchmarkStoa.class);
+		}
+	}
+
+	private static class HidingClassLoader extends ClassLoader {
+
+		HidingClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		public Enumeration<URL> getResources(String name) throws IOException {
+			return AgoraIndex.LOCATION.equals(name) ? Collections.emptyEnumeration() : super.getResources(name);
+		}
+
+	}
+
+}
@@ -1,68 +1,199 @@
 package filippos.bagordakis.agora.agora;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
-import java.time.Duration;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import filippos.bagordakis.agora.agora.cluster.AgoraHashRing;
+import filippos.bagordakis.agora.agora.codec.AgoraCodec;
+import filippos.bagordakis.agora.agora.codec.AgoraCompression;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.data.event.AgoraDeadLetterEvent;
 import filippos.bagordakis.agora.agora.data.event.AgoraEvent;
+import filippos.bagordakis.agora.agora.dedup.AgoraDedupWindow;
+import filippos.bagordakis.agora.agora.enums.AcknowledgmentModesEnum;
+import filippos.bagordakis.agora.agora.enums.BalancingPoliciesEnum;
+import filippos.bagordakis.agora.agora.enums.CodecTypesEnum;
+import filippos.bagordakis.agora.agora.enums.CompressionTypesEnum;
+import filippos.bagordakis.agora.agora.enums.FailureDetectorTypesEnum;
+import filippos.bagordakis.agora.agora.enums.OverflowPoliciesEnum;
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+import filippos.bagordakis.agora.agora.enums.TransportTypesEnum;
+import filippos.bagordakis.agora.agora.exception.AgoraQueueFullException;
+import filippos.bagordakis.agora.agora.exception.AgoraReplyException;
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.agora.liveness.AgoraFailureDetector;
+import filippos.bagordakis.agora.agora.liveness.AgoraPhiAccrualDetector;
+import filippos.bagordakis.agora.agora.liveness.AgoraTimeoutDetector;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.agora.metrics.AgoraJmx;
+import filippos.bagordakis.agora.agora.metrics.AgoraMetrics;
+import filippos.bagordakis.agora.agora.outbox.AgoraOutbox;
+import filippos.bagordakis.agora.agora.queue.AgoraOutboundQueue;
+import filippos.bagordakis.agora.agora.queue.AgoraPriorityQueue;
+import filippos.bagordakis.agora.agora.reply.AgoraReplies;
+import filippos.bagordakis.agora.agora.retransmit.AgoraRetransmitSettings;
+import filippos.bagordakis.agora.agora.retransmit.AgoraRetransmitter;
+import filippos.bagordakis.agora.agora.retransmit.AgoraTimerWheel;
+import filippos.bagordakis.agora.agora.session.AgoraSession;
+import filippos.bagordakis.agora.agora.transport.AgoraSelectorLoop;
+import filippos.bagordakis.agora.agora.transport.AgoraTransport;
+import filippos.bagordakis.agora.agora.transport.AgoraTransportSettings;
+import filippos.bagordakis.agora.agora.transport.BlockingAgoraTransport;
+import filippos.bagordakis.agora.agora.transport.NioAgoraTransport;
 import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
 import filippos.bagordakis.agora.common.dto.BaseDTO;
-import filippos.bagordakis.agora.common.dto.GreetingDTO;
-import filippos.bagordakis.agora.common.dto.HeartbeatDTO;
 import filippos.bagordakis.agora.common.dto.RequestDTO;
-import filippos.bagordakis.agora.common.request.cache.AgoraRequestCache;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
 @Component
-public class Agora {
+public class Agora implements ApplicationEventPublisherAware {
 
-	@Value("localhost")
+	@Value("${agora.server.address:localhost}")
 	private String SERVER_ADDRESS;
-	@Value("12345")
+	@Value("${agora.server.port:12345}")
 	private int SERVER_PORT;
+	@Value("${agora.servers:}")
+	private String[] SERVERS;
+	@Value("${agora.cluster.balancing:LEAST_OUTSTANDING}")
+	private BalancingPoliciesEnum BALANCING_POLICY;
+	@Value("${agora.cluster.max-ack-latency:5000}")
+	private long MAX_ACK_LATENCY;
+	@Value("${agora.cluster.ejection-grace:3000}")
+	private long EJECTION_GRACE;
+	@Value("${agora.cluster.ring-points:64}")
+	private int RING_POINTS;
 	@Value("1000")
 	private int RECONNECT_DELAY;
-	
-
-	private Socket socket = null;
-
-	private ObjectOutputStream out = null;
-	private ObjectInputStream in = null;
-
-	private final long HEARTBEAT_INTERVAL = 1000;
-	private final long HEARTBEAT_TIMEOUT = 10 * HEARTBEAT_INTERVAL;
-	private long receivedHeartbeatTime = System.currentTimeMillis();
-
-	private boolean running;
-	private boolean connected;
+	@Value("${agora.codec:BINARY}")
+	private CodecTypesEnum CODEC;
+	@Value("${agora.transport:BLOCKING}")
+	private TransportTypesEnum TRANSPORT;
+	@Value("${agora.lanes:1}")
+	private int LANES;
+	// Bounds each priority's ring, a lane using all of them holds up to three times as many
+	@Value("${agora.queue.capacity:65536}")
+	private int QUEUE_CAPACITY;
+	@Value("${agora.queue.overflow:BLOCK}")
+	private OverflowPoliciesEnum OVERFLOW_POLICY;
+	@Value("${agora.queue.block-timeout:1000}")
+	private long OVERFLOW_TIMEOUT;
+	@Value("${agora.queue.priority-weights:8,4,1}")
+	private int[] PRIORITY_WEIGHTS;
+	@Value("${agora.queue.spill-directory:${java.io.tmpdir}}")
+	private String SPILL_DIRECTORY;
+	@Value("${agora.outbox.directory:agora-outbox}")
+	private String OUTBOX_DIRECTORY;
+	@Value("${agora.outbox.segment-size:16777216}")
+	private int OUTBOX_SEGMENT_SIZE;
+	@Value("${agora.outbox.sync-interval:0}")
+	private long OUTBOX_SYNC_INTERVAL;
+	@Value("${agora.ack.mode:BATCHED}")
+	private AcknowledgmentModesEnum ACK_MODE;
+	@Value("${agora.ack.batch-size:128}")
+	private int ACK_BATCH_SIZE;
+	@Value("${agora.ack.linger:5}")
+	private long ACK_LINGER;
+	@Value("${agora.writer.batch-size:64}")
+	private int WRITER_BATCH_SIZE;
+	@Value("${agora.writer.batch-bytes:65536}")
+	private int WRITER_BATCH_BYTES;
+	@Value("${agora.writer.linger:0}")
+	private long WRITER_LINGER;
+	@Value("${agora.retransmit.initial-timeout:2000}")
+	private long RETRANSMIT_INITIAL_TIMEOUT;
+	@Value("${agora.retransmit.min-timeout:1000}")
+	private long RETRANSMIT_MIN_TIMEOUT;
+	@Value("${agora.retransmit.max-timeout:60000}")
+	private long RETRANSMIT_MAX_TIMEOUT;
+	@Value("${agora.retransmit.max-retries:5}")
+	private int RETRANSMIT_MAX_RETRIES;
+	@Value("${agora.retransmit.tick:10}")
+	private long RETRANSMIT_TICK;
+	@Value("${agora.reply.timeout:30000}")
+	private long REPLY_TIMEOUT;
+	@Value("${agora.reply.max-pending:65536}")
+	private int REPLY_MAX_PENDING;
+	@Value("${agora.compression.type:NONE}")
+	private CompressionTypesEnum COMPRESSION;
+	@Value("${agora.compression.threshold:1024}")
+	private int COMPRESSION_THRESHOLD;
+	@Value("${agora.compression.level:1}")
+	private int COMPRESSION_LEVEL;
+	@Value("${agora.metrics.jmx:true}")
+	private boolean JMX;
+	@Value("${agora.heartbeat.interval:1000}")
+	private long HEARTBEAT_INTERVAL;
+	@Value("${agora.heartbeat.detector:PHI_ACCRUAL}")
+	private FailureDetectorTypesEnum FAILURE_DETECTOR;
+	@Value("${agora.heartbeat.timeout:10000}")
+	private long HEARTBEAT_TIMEOUT;
+	@Value("${agora.heartbeat.phi-threshold:8}")
+	private double PHI_THRESHOLD;
+	@Value("${agora.heartbeat.max-samples:200}")
+	private int PHI_MAX_SAMPLES;
+	@Value("${agora.heartbeat.min-std-deviation:100}")
+	private long PHI_MIN_STD_DEVIATION;
+	@Value("${agora.heartbeat.acceptable-pause:3000}")
+	private long PHI_ACCEPTABLE_PAUSE;
+	@Value("${agora.session.resume:true}")
+	private boolean SESSION_RESUME;
+	@Value("${agora.dedup.window-size:65536}")
+	private int DEDUP_WINDOW_SIZE;
+	@Value("${agora.dedup.window-duration:60000}")
+	private long DEDUP_WINDOW_DURATION;
 
 	private static final Logger log = LoggerFactory.getLogger(Agora.class);
 
-	private static ConcurrentLinkedQueue<BaseDTO> que;
-
-	private static boolean shouldGreet = true;
-
-	private static final AgoraRequestCache cache = new AgoraRequestCache(Duration.ofMillis(2000), x -> {
-		if (x instanceof RequestDTO dto) {
-			log.info("Didnt hear back will reque !");
-			que.add(dto);
-		} else if (x instanceof GreetingDTO dto) {
-			log.info("Didnt hear back will greet again !");
-			shouldGreet = true;
-		}
-	});
+	/**
+	 * One node per server, lanes holds the lanes of all of them.
+	 */
+	private AgoraNode[] nodes = new AgoraNode[0];
+	private AgoraLane[] lanes = new AgoraLane[0];
+	private AgoraHashRing ring;
+	private ScheduledExecutorService heartbeatTimer;
+	// Moving requests may block on a full lane, the heartbeats and acknowledgments must not wait for it
+	private ExecutorService failOverExecutor;
+	private final AtomicBoolean failingOver = new AtomicBoolean();
+	private volatile AgoraOutbox outbox;
+	private AgoraTimerWheel<AgoraRetransmitter.Entry> retransmitWheel;
+	private AgoraReplies replies;
+	private volatile AgoraDedupWindow dedupWindow;
+	private final LongAdder duplicates = new LongAdder();
+	private final LongAdder failedOver = new LongAdder();
+	private ApplicationEventPublisher applicationEventPublisher;
+	private ObjectName objectName;
+	private long lastHeartbeat;
 
 	@Value("Athens")
 	private String id;
@@ -71,234 +202,743 @@ public class Agora {
 
 	public Agora(AgoraDistributionHandler agoraDistributionHandler) {
 		this.agoraDistributionHandler = agoraDistributionHandler;
-		que = new ConcurrentLinkedQueue<>();
+	}
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
 	}
 
 	@EventListener
 	protected void addToQue(AgoraEvent agoraEvent) {
-		que.add(agoraEvent.getData());
+		send(agoraEvent.getData(), agoraEvent.isDurable(), agoraEvent.getPriority());
 	}
 
-	@PostConstruct
-	public void connect() throws InterruptedException {
-		running = true;
+	public void send(RequestDTO requestDTO, boolean durable) {
+		send(requestDTO, durable, PrioritiesEnum.NORMAL);
+	}
 
-		log.atInfo();
+	/**
+	 * Queues the request on the lane of its keyword on the server picked by the
+	 * balancing policy, journaling it first when it is durable. The priority only
+	 * orders frames waiting on this side. It is not journaled, so replayed
+	 * requests go out as NORMAL.
+	 */
+	public void send(RequestDTO requestDTO, boolean durable, PrioritiesEnum priority) {
+		if (durable) {
+			try {
+				outbox().append(requestDTO);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		nodeFor(requestDTO).laneFor(requestDTO.getKeyword()).send(requestDTO, priority);
+	}
 
-		new Thread(() -> {
-			establishConnection();
-			new Thread(new Listener()).start();
-			new Thread(new Writer()).start();
-		}).start();
+	public CompletableFuture<String> request(RequestDTO requestDTO, boolean durable, long timeoutMillis) {
+		return request(requestDTO, durable, timeoutMillis, PrioritiesEnum.NORMAL);
+	}
 
+	/**
+	 * Sends the request and returns the json of its reply. The future fails
+	 * with a {@link java.util.concurrent.TimeoutException} if no reply arrives
+	 * within the timeout, 0 meaning the configured default. Replies need the
+	 * binary codec, peers on java serialization would not know them.
+	 */
+	public CompletableFuture<String> request(RequestDTO requestDTO, boolean durable, long timeoutMillis,
+			PrioritiesEnum priority) {
+		if (CODEC != CodecTypesEnum.BINARY) {
+			return CompletableFuture.failedFuture(
+					new UnsupportedOperationException("Replies need agora.codec=BINARY but it is " + CODEC));
+		}
+		CompletableFuture<String> future = replies.register(requestDTO.getId(),
+				timeoutMillis > 0 ? timeoutMillis : REPLY_TIMEOUT);
+		if (future.isDone()) {
+			return future;
+		}
+		try {
+			send(RawRequestDTO.expectingReply(requestDTO), durable, priority);
+		} catch (RuntimeException e) {
+			replies.fail(requestDTO.getId(), e);
+		}
+		return future;
 	}
 
-	@PreDestroy
-	public void close() {
+	private AgoraOutbox outbox() throws IOException {
+		AgoraOutbox current = outbox;
+		if (current == null) {
+			synchronized (this) {
+				current = outbox;
+				if (current == null) {
+					current = openOutbox();
+				}
+			}
+		}
+		return current;
+	}
 
-		running = false;
+	private synchronized AgoraOutbox openOutbox() throws IOException {
+		AgoraOutbox opened = new AgoraOutbox(Path.of(OUTBOX_DIRECTORY), OUTBOX_SEGMENT_SIZE, OUTBOX_SYNC_INTERVAL);
+		List<RequestDTO> replay = opened.open();
+		outbox = opened;
+		for (RequestDTO requestDTO : replay) {
+			nodeFor(requestDTO).laneFor(requestDTO.getKeyword()).send(requestDTO, PrioritiesEnum.NORMAL);
+		}
+		return opened;
+	}
 
-		closeConnections();
+	/**
+	 * Server for the request, never an ejected one while another is left.
+	 * Consistent hashing keeps the order of a keyword or set of targets,
+	 * least outstanding spreads the load but gives no ordering across servers.
+	 */
+	private AgoraNode nodeFor(RequestDTO requestDTO) {
+		AgoraNode[] current = nodes;
+		if (current.length == 1) {
+			return current[0];
+		}
+		if (BALANCING_POLICY == BalancingPoliciesEnum.CONSISTENT_HASH) {
+			long hash = AgoraHashRing.hash(requestDTO.getTargets(), requestDTO.getKeyword());
+			return current[ring.owner(hash, i -> !current[i].isEjected())];
+		}
+		// Starting at a random server keeps ties from all landing on the first one
+		int start = ThreadLocalRandom.current().nextInt(current.length);
+		AgoraNode best = null;
+		int fewest = Integer.MAX_VALUE;
+		for (int i = 0; i < current.length; i++) {
+			AgoraNode node = current[(start + i) % current.length];
+			if (node.isEjected()) {
+				continue;
+			}
+			int outstanding = node.getOutstanding();
+			if (outstanding < fewest) {
+				best = node;
+				fewest = outstanding;
+			}
+		}
+		return best != null ? best : current[start];
 	}
 
-	private synchronized void closeConnections() {
-		connected = false;
-		while (true) {
-			try {
-				if (socket != null && socket.isConnected()) {
-					socket.close();
-					log.info("Closing connection to Agora");
-					socket = null;
-				}
-				if (out != null) {
-					out = null;
-				}
-				if (in != null) {
-					in = null;
-				}
+	public int getLaneCount() {
+		return lanes.length;
+	}
 
-				break;
-			} catch (IOException e) {
-				e.printStackTrace();
+	public int getServerCount() {
+		return nodes.length;
+	}
+
+	public int getHealthyServers() {
+		int healthy = 0;
+		for (AgoraNode node : nodes) {
+			if (!node.isEjected()) {
+				healthy++;
 			}
 		}
+		return healthy;
 	}
 
-	private synchronized void establishConnection() {
-		while (running) {
-			try {
-				closeConnections();
-				acquireSocket();
-				connectPrintWriter();
-				getBufferedReader();
-				receivedHeartbeatTime = System.currentTimeMillis();
-				shouldGreet = true;
-				connected = true;
-				break;
-			} catch (IOException e) {
-				log.error("Failed to connect due to {}", e.getMessage());
-				e.printStackTrace();
-			}
+	/**
+	 * Times a server was taken out of the rotation.
+	 */
+	public long getEjections() {
+		long total = 0;
+		for (AgoraNode node : nodes) {
+			total += node.getEjections();
+		}
+		return total;
+	}
+
+	/**
+	 * Requests moved to another server after theirs was ejected.
+	 */
+	public long getFailedOver() {
+		return failedOver.sum();
+	}
+
+	public int getQueueDepth() {
+		int total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getQue().size();
+		}
+		return total;
+	}
+
+	public long getQueueRejections() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getQue().getRejected();
 		}
+		return total;
 	}
 
-	private void connectPrintWriter() throws IOException {
+	public long getQueueDrops() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getQue().getDropped();
+		}
+		return total;
+	}
 
-		out = new ObjectOutputStream(socket.getOutputStream());
+	public long getQueueSpills() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getQue().getSpilled();
+		}
+		return total;
+	}
 
+	/**
+	 * Time requests of the priority waited for the writer, all lanes merged
+	 * into a new histogram.
+	 */
+	public AgoraHistogram getQueueingDelay(PrioritiesEnum priority) {
+		AgoraHistogram merged = new AgoraHistogram();
+		for (AgoraLane lane : lanes) {
+			merged.add(lane.getQue().getDelay(priority));
+		}
+		return merged;
 	}
 
-	private void getBufferedReader() throws IOException {
+	public int getOutboxPending() {
+		AgoraOutbox current = outbox;
+		return current == null ? 0 : current.getPending();
+	}
 
-		in = new ObjectInputStream(socket.getInputStream());
+	public long getFramesSent() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getFramesSent();
+		}
+		return total;
+	}
 
+	public long getBytesSent() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getBytesSent();
+		}
+		return total;
 	}
 
-	private void acquireSocket() {
-		while (running) {
-			try {
+	public long getFlushes() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getFlushes();
+		}
+		return total;
+	}
 
-				socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
-				if (socket.isConnected()) {
-					log.info("Connected to Agora at  [{}]:[{}]", SERVER_ADDRESS, SERVER_PORT);
-					break;
-				}
-			} catch (UnknownHostException e) {
-				log.error("Unkown host  {}", e.getMessage());
-				throw new RuntimeException(e);
-			} catch (IOException e) {
-				log.error("Failed to connect to Agora at [{}]:[{}] with message : {}", SERVER_ADDRESS, SERVER_PORT,
-						e.getMessage());
-				try {
-					Thread.sleep(RECONNECT_DELAY);
-				} catch (InterruptedException e2) {
-					throw new RuntimeException(e2);
-				}
-			}
+	public long getFramesReceived() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getFramesReceived();
 		}
+		return total;
 	}
 
-	private class Listener implements Runnable {
+	public long getBytesReceived() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getBytesReceived();
+		}
+		return total;
+	}
 
-		@Override
-		public void run() {
+	/**
+	 * Acknowledgment latency of all lanes merged into a new histogram.
+	 */
+	public AgoraHistogram getAckLatency() {
+		AgoraHistogram merged = new AgoraHistogram();
+		for (AgoraLane lane : lanes) {
+			merged.add(lane.getRetransmitter().getAckLatency());
+		}
+		return merged;
+	}
 
-			log.info("Agora Listener started");
+	/**
+	 * Heartbeat round trip time of all lanes merged into a new histogram.
+	 */
+	public AgoraHistogram getHeartbeatRtt() {
+		AgoraHistogram merged = new AgoraHistogram();
+		for (AgoraLane lane : lanes) {
+			merged.add(lane.getHeartbeatRtt());
+		}
+		return merged;
+	}
 
-			while (running) {
+	/**
+	 * Times the failure detector gave up on the server and forced a reconnect.
+	 */
+	public long getSuspicions() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getSuspicions();
+		}
+		return total;
+	}
 
-				while (connected) {
+	/**
+	 * Reconnects that resumed their session instead of starting over.
+	 */
+	public long getSessionResumptions() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getSession().getResumptions();
+		}
+		return total;
+	}
 
-					BaseDTO dto;
-					try {
-						while ((dto = (BaseDTO) in.readObject()) != null) {
+	public long getSessionReplays() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getSession().getReplayed();
+		}
+		return total;
+	}
 
-							boolean sendAcknoledgment = false;
-							
-							receivedHeartbeatTime = System.currentTimeMillis();
+	public int getInFlight() {
+		int total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getRetransmitter().getInFlight();
+		}
+		return total;
+	}
 
-							if (dto instanceof HeartbeatDTO) {
-								log.debug("Heartbeat received");
-							} else if (dto instanceof AcknowledgmentDTO ackoledgmentDTO) {
-								BaseDTO baseDTO = cache.remove(ackoledgmentDTO);
+	public long getRetransmits() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getRetransmitter().getRetransmits();
+		}
+		return total;
+	}
 
-								if (baseDTO != null) {
-									log.debug("Received acknoledgement for {}", baseDTO.toString());
-								}
+	public long getDeadLetters() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getRetransmitter().getDeadLetters();
+		}
+		return total;
+	}
 
-							} else if (dto instanceof RequestDTO requestDTO ) {
-								log.debug("Received object [{}] over TCP", dto.toString());
-								agoraDistributionHandler.feedQue(requestDTO);
-								sendAcknoledgment = true;
-							}
+	public long getUnknownKeywordDrops() {
+		return agoraDistributionHandler.getUnknownKeywordDrops();
+	}
 
-							if (sendAcknoledgment) {
-								que.add(new AcknowledgmentDTO(dto.getId()));
-							}
-						}
-					} catch (IOException e) {
-						log.error("{}", e.getMessage());
-						e.printStackTrace();
-						establishConnection();
-					} catch (ClassNotFoundException e) {
-						log.error("{}", e.getMessage());
-						e.printStackTrace();
+	/**
+	 * Redelivered requests acknowledged again without running their krypteia.
+	 */
+	public long getDuplicatesSuppressed() {
+		return duplicates.sum();
+	}
 
-					}
-				}
+	/**
+	 * Inbound requests handed to the krypteia and not done yet.
+	 */
+	public int getInboundInFlight() {
+		return agoraDistributionHandler.getCredits().getInFlight();
+	}
 
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+	public int getInboundCredits() {
+		return agoraDistributionHandler.getCredits().getAvailable();
+	}
+
+	/**
+	 * Times reading stopped because the inbound credits ran out.
+	 */
+	public long getInboundStalls() {
+		return agoraDistributionHandler.getCredits().getExhausted();
+	}
+
+	public int getPendingReplies() {
+		AgoraReplies current = replies;
+		return current == null ? 0 : current.getPending();
+	}
+
+	public long getReplyTimeouts() {
+		AgoraReplies current = replies;
+		return current == null ? 0 : current.getTimedOut();
+	}
 
+	public long getCompressedFrames() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getCompression().getCompressedFrames();
 		}
+		return total;
+	}
 
+	public long getCompressionBytesSaved() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getCompression().getBytesSaved();
+		}
+		return total;
 	}
 
-	private class Writer implements Runnable {
+	/**
+	 * Time spent compressing and decompressing frames, in nanoseconds.
+	 */
+	public long getCompressionNanos() {
+		long total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getCompression().getCompressNanos() + lane.getCompression().getDecompressNanos();
+		}
+		return total;
+	}
 
-		private long lastHeartbeatSent = System.currentTimeMillis();
+	/**
+	 * Current retransmission timeout of every lane, in milliseconds.
+	 */
+	public long[] getRetransmissionTimeouts() {
+		AgoraLane[] current = lanes;
+		long[] timeouts = new long[current.length];
+		for (int i = 0; i < current.length; i++) {
+			timeouts[i] = current[i].getRetransmitter().getRetransmissionTimeoutMillis();
+		}
+		return timeouts;
+	}
 
-		@Override
-		public void run() {
+	@PostConstruct
+	public void connect() throws InterruptedException {
+		if (LANES < 1) {
+			throw new RuntimeException("agora.lanes must be at least 1 but was " + LANES);
+		}
 
-			log.info("Agora Writer started");
+		List<String> servers = servers();
+		AgoraCodec codec = AgoraCodec.of(CODEC);
+		if (TRANSPORT == TransportTypesEnum.NIO && !(codec instanceof BinaryAgoraCodec)) {
+			throw new RuntimeException("The NIO transport requires the " + CodecTypesEnum.BINARY + " codec");
+		}
 
-			while (running) {
-				while (connected) {
+		Function<AgoraLane, AgoraTransport> transportFactory = lane -> {
+			AgoraTransportSettings settings = transportSettings(servers.get(lane.getNode()));
+			return switch (TRANSPORT) {
+			case BLOCKING -> new BlockingAgoraTransport(settings,
+					AgoraCodec.of(CODEC, lane.getCompression(), lane.getSession()), lane);
+			case NIO -> new NioAgoraTransport(AgoraSelectorLoop.shared(), settings,
+					new BinaryAgoraCodec(lane.getCompression(), lane.getSession()), lane);
+			};
+		};
+		Supplier<AgoraFailureDetector> failureDetectorFactory = () -> switch (FAILURE_DETECTOR) {
+		case PHI_ACCRUAL -> new AgoraPhiAccrualDetector(PHI_THRESHOLD, PHI_MAX_SAMPLES, PHI_MIN_STD_DEVIATION,
+				PHI_ACCEPTABLE_PAUSE, HEARTBEAT_INTERVAL);
+		case TIMEOUT -> new AgoraTimeoutDetector(HEARTBEAT_TIMEOUT);
+		};
+		// Peers on java serialization would not know the handshake
+		CompressionTypesEnum compression = CODEC == CodecTypesEnum.BINARY ? COMPRESSION : CompressionTypesEnum.NONE;
+		boolean resume = CODEC == CodecTypesEnum.BINARY && SESSION_RESUME;
+		AgoraCredits credits = agoraDistributionHandler.getCredits();
+		int announcedCredits = CODEC == CodecTypesEnum.BINARY ? credits.getWindow() : 0;
+
+		AgoraRetransmitSettings retransmitSettings = new AgoraRetransmitSettings(RETRANSMIT_INITIAL_TIMEOUT,
+				RETRANSMIT_MIN_TIMEOUT, RETRANSMIT_MAX_TIMEOUT, RETRANSMIT_MAX_RETRIES);
+		retransmitWheel = new AgoraTimerWheel<>(512, RETRANSMIT_TICK, AgoraRetransmitter.Entry::expire,
+				"agora-retransmit");
+		retransmitWheel.start();
+		replies = new AgoraReplies(REPLY_MAX_PENDING, RETRANSMIT_TICK);
+		if (DEDUP_WINDOW_SIZE > 0) {
+			dedupWindow = new AgoraDedupWindow(DEDUP_WINDOW_SIZE, DEDUP_WINDOW_DURATION);
+		}
 
-					if (!socket.isConnected() || socket.isClosed()) {
-						running = false;
-						log.error("Socket is not connected or closed. Stopping sending data.");
-						break;
-					}
+		heartbeatTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "agora-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		failOverExecutor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "agora-failover");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		int lanesPerNode = LANES == 1 ? 1 : LANES + 1;
+		AgoraNode[] createdNodes = new AgoraNode[servers.size()];
+		AgoraLane[] created = new AgoraLane[servers.size() * lanesPerNode];
+		for (int n = 0; n < createdNodes.length; n++) {
+			AgoraLane[] nodeLanes = new AgoraLane[lanesPerNode];
+			for (int i = 0; i < nodeLanes.length; i++) {
+				AgoraPriorityQueue que = new AgoraPriorityQueue(PRIORITY_WEIGHTS, () -> new AgoraOutboundQueue(
+						QUEUE_CAPACITY, OVERFLOW_POLICY, OVERFLOW_TIMEOUT, Path.of(SPILL_DIRECTORY), this::dropped));
+				nodeLanes[i] = new AgoraLane(n, i, id, this, que, retransmitWheel, retransmitSettings,
+						new AgoraCompression(compression, COMPRESSION_THRESHOLD, COMPRESSION_LEVEL),
+						failureDetectorFactory.get(), new AgoraSession(UUID.randomUUID(), resume), credits,
+						announcedCredits);
+				created[n * lanesPerNode + i] = nodeLanes[i];
+			}
+			AgoraAcknowledger acknowledger = null;
+			// Peers on java serialization would not know the batch frame
+			if (ACK_MODE == AcknowledgmentModesEnum.BATCHED && CODEC == CodecTypesEnum.BINARY) {
+				acknowledger = new AgoraAcknowledger(ACK_BATCH_SIZE, ACK_LINGER, heartbeatTimer, nodeLanes[0]::enque);
+			}
+			createdNodes[n] = new AgoraNode(n, servers.get(n), nodeLanes, acknowledger, dedupWindow);
+		}
+		ring = new AgoraHashRing(servers, RING_POINTS);
+		nodes = createdNodes;
+		lanes = created;
 
-					try {
+		for (AgoraLane lane : created) {
+			lane.start(transportFactory);
+		}
+		log.info("Opened {} lane(s) to Agora at {}", lanesPerNode, servers);
 
-						if (shouldGreet) {
-							GreetingDTO dto = new GreetingDTO(UUID.randomUUID(), id);
-							out.writeObject(dto);
-							lastHeartbeatSent = System.currentTimeMillis();
-							cache.put(dto);
-							shouldGreet = false;
-						} else {
-							BaseDTO requestDTO = que.poll();
-							if (requestDTO != null) {
-								out.writeObject(requestDTO);
-								lastHeartbeatSent = System.currentTimeMillis();
-								cache.put(requestDTO);	
-								log.debug("Sent object [{}] over TCP", requestDTO.toString());
-							}
-						}
+		if (JMX) {
+			objectName = AgoraJmx.agoraName(id);
+			AgoraJmx.register(objectName, new AgoraMetrics(this));
+		}
 
-						if (System.currentTimeMillis() - lastHeartbeatSent >= HEARTBEAT_INTERVAL) {
-							HeartbeatDTO heartbeatDTO = HeartbeatDTO.newInstance();
-							out.writeObject(heartbeatDTO);
-							lastHeartbeatSent = System.currentTimeMillis();
-							log.debug("Heartbeat [{}] sent to [{}]", heartbeatDTO.getId(),
-									socket.getRemoteSocketAddress().toString());
-						}
+		lastHeartbeat = System.currentTimeMillis();
+		heartbeatTimer.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL,
+				TimeUnit.MILLISECONDS);
 
-					} catch (IOException e) {
-						log.error("Failed to serialize and send object", e);
-					}
+		// Requests left over from a previous run go out before any new traffic
+		if (Files.isDirectory(Path.of(OUTBOX_DIRECTORY))) {
+			try {
+				openOutbox();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
 
-					if (System.currentTimeMillis() - receivedHeartbeatTime > HEARTBEAT_TIMEOUT) {
-						establishConnection();
-					}
+	/**
+	 * The servers as host:port, the single configured one if no list is given.
+	 */
+	private List<String> servers() {
+		List<String> servers = new ArrayList<>();
+		if (SERVERS != null) {
+			for (String server : SERVERS) {
+				if (!server.isBlank()) {
+					servers.add(server.trim());
 				}
+			}
+		}
+		if (servers.isEmpty()) {
+			servers.add(SERVER_ADDRESS + ":" + SERVER_PORT);
+		}
+		if (new HashSet<>(servers).size() != servers.size()) {
+			throw new RuntimeException("agora.servers lists a server more than once: " + servers);
+		}
+		return servers;
+	}
+
+	private AgoraTransportSettings transportSettings(String server) {
+		int colon = server.lastIndexOf(':');
+		if (colon <= 0 || colon == server.length() - 1) {
+			throw new RuntimeException("Agora server " + server + " is not of the form host:port");
+		}
+		String address = server.substring(0, colon);
+		// [::1]:12345
+		if (address.startsWith("[") && address.endsWith("]")) {
+			address = address.substring(1, address.length() - 1);
+		}
+		int port;
+		try {
+			port = Integer.parseInt(server.substring(colon + 1));
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("Agora server " + server + " has an invalid port", e);
+		}
+		return new AgoraTransportSettings(address, port, RECONNECT_DELAY, WRITER_BATCH_SIZE, WRITER_BATCH_BYTES,
+				WRITER_LINGER);
+	}
+
+	@PreDestroy
+	public void close() {
+		if (objectName != null) {
+			AgoraJmx.unregister(objectName);
+		}
+		// With the timer down acknowledgments are flushed as they come
+		if (heartbeatTimer != null) {
+			heartbeatTimer.shutdownNow();
+		}
+		if (failOverExecutor != null) {
+			failOverExecutor.shutdownNow();
+		}
+		for (AgoraLane lane : lanes) {
+			lane.stopReading();
+		}
+		for (AgoraNode node : nodes) {
+			node.flush();
+		}
+		if (retransmitWheel != null) {
+			retransmitWheel.stop();
+		}
+		if (replies != null) {
+			replies.close();
+		}
+		for (AgoraLane lane : lanes) {
+			lane.close();
+		}
+		if (outbox != null) {
+			outbox.close();
+		}
+	}
 
+	private void heartbeat() {
+		long now = System.currentTimeMillis();
+		// A late tick means this process stalled, the readers get a round to catch up before anyone is judged
+		boolean verdict = now - lastHeartbeat < 2 * HEARTBEAT_INTERVAL;
+		if (!verdict) {
+			log.info("Heartbeat ran {}ms late, skipping failure detection this round",
+					now - lastHeartbeat - HEARTBEAT_INTERVAL);
+		}
+		lastHeartbeat = now;
+		for (AgoraLane lane : lanes) {
+			lane.heartbeat(HEARTBEAT_INTERVAL, verdict);
+		}
+		if (verdict && nodes.length > 1) {
+			for (AgoraNode node : nodes) {
+				node.judge(now, MAX_ACK_LATENCY, EJECTION_GRACE);
+			}
+			int healthy = getHealthyServers();
+			if (healthy > 0 && healthy < nodes.length && failingOver.compareAndSet(false, true)) {
 				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+					failOverExecutor.execute(this::failOverEjected);
+				} catch (RejectedExecutionException e) {
+					failingOver.set(false);
+				}
+			}
+		}
+	}
+
+	private void failOverEjected() {
+		try {
+			for (AgoraNode node : nodes) {
+				if (node.isEjected()) {
+					failOver(node);
+				}
+			}
+		} finally {
+			failingOver.set(false);
+		}
+	}
+
+	/**
+	 * Sends what an ejected server still owes to the healthy ones. The old
+	 * server may have delivered some of it already, receivers drop those by id.
+	 */
+	private void failOver(AgoraNode from) {
+		List<RequestDTO> evacuated = from.evacuate();
+		if (evacuated.isEmpty()) {
+			return;
+		}
+		for (RequestDTO requestDTO : evacuated) {
+			try {
+				nodeFor(requestDTO).laneFor(requestDTO.getKeyword()).send(requestDTO, PrioritiesEnum.HIGH);
+			} catch (RuntimeException e) {
+				log.warn("Could not fail over request {} from Agora server {}", requestDTO.getId(), from.getName(), e);
+				replies.fail(requestDTO.getId(), e);
+			}
+		}
+		failedOver.add(evacuated.size());
+		log.info("Failed over {} request(s) from Agora server {}", evacuated.size(), from.getName());
+	}
+
+	/**
+	 * Returns false if the frame was turned away, to be retransmitted by the
+	 * server.
+	 */
+	boolean received(AgoraLane lane, BaseDTO dto) {
+		if (dto instanceof AcknowledgmentBatchDTO batchDTO) {
+			List<UUID> acknowledged = batchDTO.getAcknowledged();
+			for (UUID ackId : acknowledged) {
+				acknowledge(lane, ackId);
+			}
+
+			AgoraOutbox current = outbox;
+			if (current != null) {
+				current.complete(acknowledged);
+			}
+
+		} else if (dto instanceof AcknowledgmentDTO ackoledgmentDTO) {
+			acknowledge(lane, ackoledgmentDTO.getId());
+
+			AgoraOutbox current = outbox;
+			if (current != null) {
+				current.complete(ackoledgmentDTO.getId());
+			}
+
+		} else if (dto instanceof ResponseDTO responseDTO) {
+			nodes[lane.getNode()].acknowledgeRequest(responseDTO.getId());
+			if (!replies.complete(responseDTO)) {
+				log.debug("Nobody is waiting for the reply to {}", responseDTO.getCorrelationId());
+			}
+
+		} else if (dto instanceof RequestDTO requestDTO) {
+			log.debug("Received object [{}] over TCP on lane {}", dto.toString(), lane.getIndex());
+			AgoraNode node = nodes[lane.getNode()];
+			AgoraDedupWindow window = dedupWindow;
+			if (window != null && !window.add(requestDTO.getId())) {
+				log.debug("Suppressing duplicate of request {}", requestDTO.getId());
+				duplicates.increment();
+				// Taken and acknowledged already, the acknowledgment must have been lost. One
+				// still being handled is acknowledged when it is done
+				if (window.isAcknowledged(requestDTO.getId())) {
+					node.acknowledgeRequest(requestDTO.getId());
 				}
+				return true;
+			}
+			if (!agoraDistributionHandler.feedQue(requestDTO, node.getRequestAcknowledger())) {
+				log.debug("Krypteia {} is full, leaving request {} for the server to resend", requestDTO.getKeyword(),
+						requestDTO.getId());
+				node.getRequestAcknowledger().release(requestDTO.getId());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void deadLetter(AgoraLane lane, RequestDTO requestDTO) {
+		log.warn("Giving up on request {} with keyword {} on lane {} after {} retries", requestDTO.getId(),
+				requestDTO.getKeyword(), lane.getIndex(), RETRANSMIT_MAX_RETRIES);
 
+		AgoraOutbox current = outbox;
+		if (current != null) {
+			current.complete(requestDTO.getId());
+		}
+		replies.fail(requestDTO.getId(), new AgoraReplyException(
+				"Request " + requestDTO.getId() + " was not acknowledged after " + RETRANSMIT_MAX_RETRIES + " retries"));
+		if (applicationEventPublisher != null) {
+			applicationEventPublisher
+					.publishEvent(new AgoraDeadLetterEvent(this, requestDTO, RETRANSMIT_MAX_RETRIES + 1));
+		}
+	}
+
+	/**
+	 * A frame the outbound queue evicted before it was sent. Requests are dead
+	 * lettered like those out of retries, replies are left to time out on the
+	 * other side.
+	 */
+	private void dropped(BaseDTO dto) {
+		if (!(dto instanceof RequestDTO requestDTO) || dto instanceof ResponseDTO) {
+			log.warn("Dropped {} from a full outbound queue", dto);
+			return;
+		}
+		log.warn("Dropped request {} with keyword {} from a full outbound queue", requestDTO.getId(),
+				requestDTO.getKeyword());
+
+		AgoraOutbox current = outbox;
+		if (current != null) {
+			current.complete(requestDTO.getId());
+		}
+		replies.fail(requestDTO.getId(),
+				new AgoraQueueFullException("Request " + requestDTO.getId() + " was dropped from a full queue"));
+		if (applicationEventPublisher != null) {
+			applicationEventPublisher.publishEvent(new AgoraDeadLetterEvent(this, requestDTO, 0));
+		}
+	}
+
+	private void acknowledge(AgoraLane lane, UUID ackId) {
+		BaseDTO baseDTO = lane.acknowledge(ackId);
+		for (int i = 0; baseDTO == null && i < lanes.length; i++) {
+			if (lanes[i] != lane) {
+				baseDTO = lanes[i].acknowledge(ackId);
 			}
 		}
+
+		if (baseDTO != null) {
+			log.debug("Received acknoledgement for {}", baseDTO.toString());
+		}
 	}
 
 }
@@ -0,0 +1,73 @@
+package filippos.bagordakis.agora.agora;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * Collects the ids of received requests and acknowledges them together, once
+ * the batch is full or the linger window since the first id has passed. Once
+ * the timer is shut down every id is flushed right away.
+ */
+class AgoraAcknowledger {
+
+	private final int batchSize;
+	private final long lingerMillis;
+	private final ScheduledExecutorService timer;
+	private final Consumer<BaseDTO> sink;
+
+	private final long[] ids;
+	private int count;
+	private boolean flushScheduled;
+
+	AgoraAcknowledger(int batchSize, long lingerMillis, ScheduledExecutorService timer, Consumer<BaseDTO> sink) {
+		this.batchSize = Math.max(1, batchSize);
+		this.lingerMillis = lingerMillis;
+		this.timer = timer;
+		this.sink = sink;
+		this.ids = new long[this.batchSize * 2];
+	}
+
+	synchronized void acknowledge(UUID id) {
+		ids[count * 2] = id.getMostSignificantBits();
+		ids[count * 2 + 1] = id.getLeastSignificantBits();
+		count++;
+
+		if (count >= batchSize || timer.isShutdown()) {
+			flush();
+		} else if (!flushScheduled) {
+			try {
+				timer.schedule(this::lingered, lingerMillis, TimeUnit.MILLISECONDS);
+				flushScheduled = true;
+			} catch (RejectedExecutionException e) {
+				// Shut down since the check above
+				flush();
+			}
+		}
+	}
+
+	private synchronized void lingered() {
+		flushScheduled = false;
+		flush();
+	}
+
+	synchronized void flush() {
+		if (count == 0) {
+			return;
+		}
+		if (count == 1) {
+			sink.accept(new AcknowledgmentDTO(new UUID(ids[0], ids[1])));
+		} else {
+			sink.accept(new AcknowledgmentBatchDTO(UUID.randomUUID(), Arrays.copyOf(ids, count * 2)));
+		}
+		count = 0;
+	}
+
+}
@@ -1,19 +1,45 @@
 package filippos.bagordakis.agora.agora;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.dispatch.AgoraBatchDispatcher;
+import filippos.bagordakis.agora.agora.dispatch.AgoraBulkhead;
+import filippos.bagordakis.agora.agora.dispatch.AgoraDispatcher;
+import filippos.bagordakis.agora.agora.dispatch.AgoraKeyExtractor;
+import filippos.bagordakis.agora.agora.dispatch.AgoraPartitionedDispatcher;
+import filippos.bagordakis.agora.agora.dispatch.AgoraPartitions;
+import filippos.bagordakis.agora.agora.dispatch.AgoraReplier;
+import filippos.bagordakis.agora.agora.dispatch.AgoraRequestAcknowledger;
+import filippos.bagordakis.agora.agora.enums.ExecutionModesEnum;
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.agora.metrics.AgoraJmx;
+import filippos.bagordakis.agora.agora.metrics.AgoraKripteiaMetrics;
 import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.index.AgoraIndex;
 import filippos.bagordakis.agora.kripteia.Kripteia;
 import filippos.bagordakis.agora.kripteia.KrypteiaInfo;
+import filippos.bagordakis.agora.kripteia.KrypteiaInvokers;
 import filippos.bagordakis.agora.kripteia.Krypteias;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -22,9 +48,33 @@ public class AgoraDistributionHandler {
 
 	private static final Logger log = LoggerFactory.getLogger(AgoraDistributionHandler.class);
 
+	@Value("${agora.kripteia.concurrency:0}")
+	private int CONCURRENCY;
+	@Value("${agora.kripteia.queue-capacity:10000}")
+	private int QUEUE_CAPACITY;
+	@Value("${agora.kripteia.execution:POOLED}")
+	private ExecutionModesEnum EXECUTION;
+	@Value("${agora.kripteia.partitions:0}")
+	private int PARTITIONS;
+	@Value("${agora.inbound.credits:8192}")
+	private int INBOUND_CREDITS;
+	@Value("${agora.metrics.jmx:true}")
+	private boolean JMX;
+
+	private final int VIRTUAL_CONCURRENCY = 256;
+	private final int MAX_UNKNOWN_KEYWORDS = 1024;
+
 	private final ApplicationContext applicationContext;
 	private final ExecutorService executor;
+	private ExecutorService virtualExecutor;
+	private AgoraPartitions partitions;
+	private ScheduledExecutorService lingerTimer;
+	private final ObjectMapper objectMapper = new ObjectMapper();
 	private final Map<String, KrypteiaInfo> krypteia;
+	private final Map<String, AgoraDispatcher> dispatchers = new ConcurrentHashMap<>();
+	private final Set<String> unknownKeywords = ConcurrentHashMap.newKeySet();
+	private final LongAdder unknownDrops = new LongAdder();
+	private AgoraCredits credits = new AgoraCredits(0);
 	private boolean started = false;
 
 	public AgoraDistributionHandler(ApplicationContext applicationContext) {
@@ -35,72 +85,289 @@ public class AgoraDistributionHandler {
 
 	@PostConstruct
 	public void start() {
+		Environment environment = applicationContext.getEnvironment();
+		credits = new AgoraCredits(INBOUND_CREDITS);
+		for (Map.Entry<String, KrypteiaInfo> entry : krypteia.entrySet()) {
+			String keyword = entry.getKey();
+			Kripteia kripteia = entry.getValue().method().getAnnotation(Kripteia.class);
+			String prefix = "agora.kripteia." + keyword + ".";
+
+			String orderBy = environment.getProperty(prefix + "order-by", String.class, kripteia.orderBy());
+			int batchSize = environment.getProperty(prefix + "batch-size", Integer.class, kripteia.batchSize());
+			if (!orderBy.isEmpty() && batchSize > 0) {
+				throw new RuntimeException("Krypteia " + keyword + " cannot be both ordered and batched");
+			}
+			if (!orderBy.isEmpty()) {
+				dispatchers.put(keyword, new AgoraPartitionedDispatcher(keyword, entry.getValue(), partitions(),
+						new AgoraKeyExtractor(objectMapper, orderBy), replierFor(entry.getValue()), credits));
+				log.info("Krypteia {} runs ordered by {} on {} partitions", keyword, orderBy,
+						partitions().getPartitionCount());
+				continue;
+			}
+
+			ExecutionModesEnum execution = environment.getProperty(prefix + "execution", ExecutionModesEnum.class,
+					kripteia.execution());
+			if (execution == ExecutionModesEnum.DEFAULT) {
+				execution = EXECUTION == ExecutionModesEnum.DEFAULT ? ExecutionModesEnum.POOLED : EXECUTION;
+			}
+			int concurrency = environment.getProperty(prefix + "concurrency", Integer.class,
+					kripteia.concurrency() > 0 ? kripteia.concurrency() : CONCURRENCY);
+			if (concurrency <= 0) {
+				concurrency = execution == ExecutionModesEnum.VIRTUAL ? VIRTUAL_CONCURRENCY
+						: Runtime.getRuntime().availableProcessors();
+			}
+			int queueCapacity = environment.getProperty(prefix + "queue-capacity", Integer.class,
+					kripteia.queueCapacity() > 0 ? kripteia.queueCapacity() : QUEUE_CAPACITY);
+
+			ExecutorService target = execution == ExecutionModesEnum.VIRTUAL ? virtualExecutor() : executor;
+			if (batchSize > 0) {
+				long linger = environment.getProperty(prefix + "batch-linger", Long.class, kripteia.batchLinger());
+				KrypteiaInfo info = entry.getValue();
+				dispatchers.put(keyword,
+						new AgoraBatchDispatcher(keyword,
+								KrypteiaInvokers.createBatch(info.bean(), info.method(), objectMapper), target,
+								lingerTimer(), concurrency, queueCapacity, batchSize, linger, credits));
+				log.info("Krypteia {} runs {} in batches of {} lingering {}ms", keyword, execution, batchSize, linger);
+				continue;
+			}
+			dispatchers.put(keyword, new AgoraBulkhead(keyword, entry.getValue(), target, concurrency, queueCapacity,
+					replierFor(entry.getValue()), credits));
+			log.info("Krypteia {} runs {} with concurrency {} and que capacity {}", keyword, execution, concurrency,
+					queueCapacity);
+		}
+		if (JMX) {
+			for (Map.Entry<String, AgoraDispatcher> entry : dispatchers.entrySet()) {
+				AgoraJmx.register(AgoraJmx.kripteiaName(entry.getKey()),
+						new AgoraKripteiaMetrics(entry.getKey(), entry.getValue()));
+			}
+		}
 		started = true;
 	}
 
+	private AgoraReplier replierFor(KrypteiaInfo info) {
+		Class<?> returnType = info.method().getReturnType();
+		return returnType == void.class || returnType == Void.class ? null : this::reply;
+	}
+
+	/**
+	 * Sends what a handler returned, or the exception it threw, back to the
+	 * sender of the request.
+	 */
+	private void reply(RequestDTO requestDTO, AgoraRequestAcknowledger origin, Object result, Exception error) {
+		// Only the binary codec marks requests, nothing is sent back to peers on java serialization
+		if (!(requestDTO instanceof RawRequestDTO rawRequestDTO && rawRequestDTO.isReplyExpected())) {
+			return;
+		}
+		try {
+			String json = error == null ? objectMapper.writeValueAsString(result) : null;
+			String message = error == null ? null : error.getClass().getName() + ": " + error.getMessage();
+			origin.reply(new ResponseDTO(UUID.randomUUID(), requestDTO.getKeyword(), null, json, requestDTO.getId(),
+					message));
+		} catch (Exception e) {
+			log.error("Could not reply to request {} for keyword {}", requestDTO.getId(), requestDTO.getKeyword(), e);
+		}
+	}
+
+	private AgoraPartitions partitions() {
+		if (partitions == null) {
+			partitions = new AgoraPartitions(PARTITIONS > 0 ? PARTITIONS : Runtime.getRuntime().availableProcessors(),
+					QUEUE_CAPACITY);
+		}
+		return partitions;
+	}
+
+	private ScheduledExecutorService lingerTimer() {
+		if (lingerTimer == null) {
+			lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "agora-batch-linger");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return lingerTimer;
+	}
+
+	/**
+	 * Virtual threads need Java 21 while the library builds for 17, so the
+	 * factory is looked up at runtime. Older runtimes get a cached pool instead,
+	 * the bulkheads still bound how many threads it grows to.
+	 */
+	private synchronized ExecutorService virtualExecutor() {
+		if (virtualExecutor == null) {
+			try {
+				virtualExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+						.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				log.warn("Virtual threads are not available on Java {}, using a cached thread pool",
+						Runtime.version().feature());
+				AtomicInteger count = new AtomicInteger();
+				virtualExecutor = Executors.newCachedThreadPool(r -> {
+					Thread thread = new Thread(r, "agora-kripteia-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+		}
+		return virtualExecutor;
+	}
+
 	private Map<String, KrypteiaInfo> wireUpKrypteia() {
 		Map<String, KrypteiaInfo> valuesToMethods = new ConcurrentHashMap<>();
 
+		boolean useIndex = applicationContext.getEnvironment().getProperty("agora.index.enabled", Boolean.class, true);
+		AgoraIndex index = !useIndex ? null
+				: AgoraIndex.load(applicationContext.getClassLoader() != null ? applicationContext.getClassLoader()
+						: AgoraDistributionHandler.class.getClassLoader());
+		if (index != null) {
+			Map<Class<?>, List<Method>> indexed = index.getKripteiaMethods();
+			for (Map.Entry<Class<?>, List<Method>> entry : indexed.entrySet()) {
+				for (String beanName : applicationContext.getBeanNamesForType(entry.getKey())) {
+					Object bean = applicationContext.getBean(beanName);
+					for (Method method : entry.getValue()) {
+						register(valuesToMethods, bean, method);
+					}
+				}
+			}
+			// An index in any jar stops the scan, beans compiled without the processor would be lost
+			for (String beanName : applicationContext.getBeanNamesForAnnotation(Krypteias.class)) {
+				Object bean = applicationContext.getBean(beanName);
+				if (!isIndexed(indexed.keySet(), ClassUtils.getUserClass(bean))) {
+					log.warn("Krypteias bean {} is missing from {}, scanning it instead", beanName,
+							AgoraIndex.LOCATION);
+					scan(valuesToMethods, bean);
+				}
+			}
+			log.info(valuesToMethods.toString());
+			return valuesToMethods;
+		}
+
 		String[] beanNames = applicationContext.getBeanNamesForAnnotation(Krypteias.class);
 		for (String beanName : beanNames) {
+			scan(valuesToMethods, applicationContext.getBean(beanName));
+			log.info(valuesToMethods.toString());
+		}
 
-			Object bean = applicationContext.getBean(beanName);
-			Class<?> beanClass = bean.getClass();
+		return valuesToMethods;
 
-			for (Method method : beanClass.getDeclaredMethods()) {
-				if (method.isAnnotationPresent(Kripteia.class)) {
-					Kripteia kripteia = method.getAnnotation(Kripteia.class);
-					String value = kripteia.value();
+	}
 
-					if (valuesToMethods.containsKey(value)) {
-						throw new RuntimeException("Duplicate value for @Kripteia annotation found: " + value);
-					}
+	private static boolean isIndexed(Set<Class<?>> indexed, Class<?> beanClass) {
+		for (Class<?> type : indexed) {
+			if (type.isAssignableFrom(beanClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
-					Class<?> firstParamType = null;
-					if (method.getParameterCount() > 0) {
-						firstParamType = method.getParameterTypes()[0];
-					}
+	private void scan(Map<String, KrypteiaInfo> valuesToMethods, Object bean) {
+		for (Method method : bean.getClass().getDeclaredMethods()) {
+			if (method.isAnnotationPresent(Kripteia.class)) {
+				register(valuesToMethods, bean, method);
+			}
+		}
+	}
 
-					KrypteiaInfo info = new KrypteiaInfo(bean, method, firstParamType);
+	private void register(Map<String, KrypteiaInfo> valuesToMethods, Object bean, Method method) {
+		Kripteia kripteia = method.getAnnotation(Kripteia.class);
+		String value = kripteia.value();
 
-					valuesToMethods.put(value, info);
-				}
-			}
-			log.info(valuesToMethods.toString());
+		if (valuesToMethods.containsKey(value)) {
+			throw new RuntimeException("Duplicate value for @Kripteia annotation found: " + value);
 		}
 
-		return valuesToMethods;
+		KrypteiaInfo info = new KrypteiaInfo(bean, method, KrypteiaInvokers.create(bean, method, objectMapper));
 
+		valuesToMethods.put(value, info);
 	}
 
 	@PreDestroy
 	public void stop() {
 		if (started) {
+			if (JMX) {
+				for (String keyword : dispatchers.keySet()) {
+					AgoraJmx.unregister(AgoraJmx.kripteiaName(keyword));
+				}
+			}
 			executor.shutdown();
+			if (partitions != null) {
+				partitions.close();
+			}
+			if (lingerTimer != null) {
+				lingerTimer.shutdownNow();
+			}
+			synchronized (this) {
+				if (virtualExecutor != null) {
+					virtualExecutor.shutdown();
+				}
+			}
 		}
 	}
 
-	public void feedQue(RequestDTO requestDTO) {
-		this.executor.submit(new Task(requestDTO));
+	/**
+	 * Hands the request to the dispatcher of its keyword, which passes the id to
+	 * the acknowledger once it is safe to acknowledge. Returns false when the
+	 * dispatcher is full and the request must be left for the server to resend.
+	 * Requests for keywords nobody handles are acknowledged and dropped without
+	 * their payload ever being read. Accepted requests hold an inbound credit
+	 * until their handler is done.
+	 */
+	public boolean feedQue(RequestDTO requestDTO, AgoraRequestAcknowledger acknowledger) {
+		String keyword = requestDTO.getKeyword();
+		AgoraDispatcher dispatcher = keyword == null ? null : dispatchers.get(keyword);
+		if (dispatcher == null) {
+			unknownDrops.increment();
+			// Warn once per keyword, a misbehaving peer should not flood the log
+			if (unknownKeywords.size() < MAX_UNKNOWN_KEYWORDS && unknownKeywords.add(String.valueOf(keyword))) {
+				log.warn("No krypteia for keyword {}, dropping its requests", keyword);
+			}
+			acknowledger.acknowledge(requestDTO.getId());
+			return true;
+		}
+		credits.take();
+		if (!dispatcher.dispatch(requestDTO, acknowledger)) {
+			credits.release(1);
+			return false;
+		}
+		return true;
 	}
 
-	private class Task implements Runnable {
+	/**
+	 * Inbound window shared by every dispatcher, the transports stop reading
+	 * while it is used up.
+	 */
+	public AgoraCredits getCredits() {
+		return credits;
+	}
 
-		private final RequestDTO task;
+	public AgoraDispatcher getDispatcher(String keyword) {
+		return dispatchers.get(keyword);
+	}
 
-		public Task(RequestDTO task) {
-			this.task = task;
-		}
+	public Map<String, AgoraDispatcher> getDispatchers() {
+		return Map.copyOf(dispatchers);
+	}
 
-		@Override
-		public void run() {
-			try {
-				krypteia.get(task.getKeyword()).execute(task.getJsonData());
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-				e.printStackTrace();
-			}
-		}
+	/**
+	 * Requests dropped because no krypteia handles their keyword.
+	 */
+	public long getUnknownKeywordDrops() {
+		return unknownDrops.sum();
+	}
+
+	public int getQueueDepth(String keyword) {
+		AgoraDispatcher dispatcher = dispatchers.get(keyword);
+		return dispatcher == null ? 0 : dispatcher.getQueueDepth();
+	}
+
+	public int getActive(String keyword) {
+		AgoraDispatcher dispatcher = dispatchers.get(keyword);
+		return dispatcher == null ? 0 : dispatcher.getActive();
+	}
 
+	public long getRejected(String keyword) {
+		AgoraDispatcher dispatcher = dispatchers.get(keyword);
+		return dispatcher == null ? 0 : dispatcher.getRejected();
 	}
 
 }
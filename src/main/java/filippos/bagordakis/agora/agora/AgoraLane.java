@@ -0,0 +1,402 @@
+package filippos.bagordakis.agora.agora;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.codec.AgoraCompression;
+import filippos.bagordakis.agora.agora.data.dto.HandshakeDTO;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.agora.enums.CompressionTypesEnum;
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.agora.liveness.AgoraFailureDetector;
+import filippos.bagordakis.agora.agora.queue.AgoraPriorityQueue;
+import filippos.bagordakis.agora.agora.retransmit.AgoraRetransmitSettings;
+import filippos.bagordakis.agora.agora.retransmit.AgoraRetransmitter;
+import filippos.bagordakis.agora.agora.retransmit.AgoraTimerWheel;
+import filippos.bagordakis.agora.agora.session.AgoraSession;
+import filippos.bagordakis.agora.agora.transport.AgoraTransport;
+import filippos.bagordakis.agora.agora.transport.AgoraTransportHandler;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.GreetingDTO;
+import filippos.bagordakis.agora.common.dto.HeartbeatDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * One connection to the Agora server with its own que, greeting, session and
+ * retransmitter. Control frames and retransmits skip the bounded que so they
+ * are never rejected or dropped by its overflow policy, and go out ahead of
+ * every priority.
+ */
+class AgoraLane implements AgoraTransportHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraLane.class);
+
+	private final int node;
+	private final int index;
+	private final String id;
+	private final Agora agora;
+
+	private final AgoraPriorityQueue que;
+	private final ConcurrentLinkedQueue<BaseDTO> controlQue = new ConcurrentLinkedQueue<>();
+	private final AgoraRetransmitter retransmitter;
+	private final AgoraCompression compression;
+	private final AgoraFailureDetector failureDetector;
+	private final AgoraSession session;
+	private final AgoraCredits credits;
+	private final int announcedCredits;
+	private final Runnable resumeReading = () -> {
+		AgoraTransport current = this.transport;
+		if (current != null) {
+			current.resumeReading();
+		}
+	};
+
+	private AgoraTransport transport;
+
+	private volatile long lastReceivedTime = System.currentTimeMillis();
+	private volatile long lastSentTime = System.currentTimeMillis();
+	private volatile boolean connected;
+	private volatile boolean shouldGreet = true;
+	private volatile boolean closing;
+
+	private final LongAdder framesSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder framesReceived = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder suspicions = new LongAdder();
+	private final AgoraHistogram heartbeatRtt = new AgoraHistogram();
+	private volatile long heartbeatSentAt;
+
+	AgoraLane(int node, int index, String id, Agora agora, AgoraPriorityQueue que,
+			AgoraTimerWheel<AgoraRetransmitter.Entry> wheel, AgoraRetransmitSettings retransmitSettings,
+			AgoraCompression compression, AgoraFailureDetector failureDetector, AgoraSession session,
+			AgoraCredits credits, int announcedCredits) {
+		this.node = node;
+		this.index = index;
+		this.id = id;
+		this.agora = agora;
+		this.que = que;
+		this.compression = compression;
+		this.failureDetector = failureDetector;
+		this.session = session;
+		this.credits = credits;
+		this.announcedCredits = announcedCredits;
+		this.retransmitter = new AgoraRetransmitter(wheel, retransmitSettings, x -> {
+			if (x instanceof RequestDTO dto) {
+				log.debug("Didnt hear back will reque {} on lane {} !", dto.getId(), index);
+				enque(dto);
+			} else if (x instanceof GreetingDTO) {
+				log.info("Didnt hear back will greet again on lane {} !", index);
+				// Requests stop waiting for a session a silent peer may never agree on
+				session.proceed();
+				shouldGreet = true;
+				wakeup();
+			}
+		}, dto -> {
+			session.acknowledged(dto.getId());
+			agora.deadLetter(this, dto);
+		});
+	}
+
+	void start(Function<AgoraLane, AgoraTransport> transportFactory) {
+		transport = transportFactory.apply(this);
+		credits.onAvailable(resumeReading);
+		transport.start();
+	}
+
+	/**
+	 * Takes in no more frames, the connection stays open for what is still to be
+	 * sent.
+	 */
+	void stopReading() {
+		closing = true;
+	}
+
+	void close() {
+		credits.removeListener(resumeReading);
+		if (transport != null) {
+			transport.close();
+		}
+		que.close();
+	}
+
+	void send(RequestDTO dto, PrioritiesEnum priority) {
+		que.add(dto, priority);
+		wakeup();
+	}
+
+	void enque(BaseDTO dto) {
+		controlQue.add(dto);
+		wakeup();
+	}
+
+	private void wakeup() {
+		AgoraTransport current = transport;
+		if (current != null) {
+			current.wakeup();
+		}
+	}
+
+	BaseDTO acknowledge(UUID id) {
+		BaseDTO dto = retransmitter.acknowledge(id);
+		if (dto instanceof GreetingDTO && session.isAwaiting()) {
+			// Acknowledged without a handshake first, the server does not do sessions
+			session.proceed();
+			wakeup();
+		} else {
+			session.acknowledged(id);
+		}
+		return dto;
+	}
+
+	/**
+	 * Heartbeats only go out once a direction has been idle for an interval,
+	 * while traffic flows the frames themselves prove both ends alive. Without a
+	 * verdict the detector is not asked, the caller saw its own thread stall.
+	 * Nor is it while reading is held back for credits, that silence is ours.
+	 */
+	void heartbeat(long interval, boolean verdict) {
+		if (!connected) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (!credits.hasCredit()) {
+			failureDetector.reset(now);
+		} else if (verdict && !failureDetector.isAvailable(now)) {
+			log.info("Agora suspected on lane {} after {}ms of silence, reconnecting", index, now - lastReceivedTime);
+			suspicions.increment();
+			failureDetector.reset(now);
+			transport.reconnect();
+		} else if (now - lastSentTime >= interval || now - lastReceivedTime >= interval) {
+			enque(HeartbeatDTO.newInstance());
+		}
+	}
+
+	/**
+	 * Index of the server this lane connects to.
+	 */
+	int getNode() {
+		return node;
+	}
+
+	int getIndex() {
+		return index;
+	}
+
+	boolean isConnected() {
+		return connected;
+	}
+
+	boolean isSuspected(long now) {
+		return connected && !failureDetector.isAvailable(now);
+	}
+
+	/**
+	 * Takes back every request that was not acknowledged yet, in flight first
+	 * and then whatever is still queued, so it can be sent to another server.
+	 * The session forgets them as well, a later resume will not replay them.
+	 */
+	List<RequestDTO> evacuate() {
+		Map<UUID, RequestDTO> evacuated = new LinkedHashMap<>();
+		for (RequestDTO requestDTO : retransmitter.drain()) {
+			evacuated.put(requestDTO.getId(), requestDTO);
+		}
+		List<BaseDTO> queued = new ArrayList<>();
+		BaseDTO dto;
+		while ((dto = controlQue.poll()) != null) {
+			queued.add(dto);
+		}
+		que.drainTo(queued);
+		for (BaseDTO queuedDTO : queued) {
+			if (queuedDTO instanceof RequestDTO requestDTO) {
+				evacuated.putIfAbsent(requestDTO.getId(), requestDTO);
+			} else {
+				controlQue.add(queuedDTO);
+			}
+		}
+		for (UUID evacuatedId : evacuated.keySet()) {
+			session.acknowledged(evacuatedId);
+		}
+		return new ArrayList<>(evacuated.values());
+	}
+
+	AgoraPriorityQueue getQue() {
+		return que;
+	}
+
+	AgoraRetransmitter getRetransmitter() {
+		return retransmitter;
+	}
+
+	AgoraCompression getCompression() {
+		return compression;
+	}
+
+	AgoraSession getSession() {
+		return session;
+	}
+
+	long getFramesSent() {
+		return framesSent.sum();
+	}
+
+	long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	long getFlushes() {
+		return flushes.sum();
+	}
+
+	long getFramesReceived() {
+		return framesReceived.sum();
+	}
+
+	long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	AgoraHistogram getHeartbeatRtt() {
+		return heartbeatRtt;
+	}
+
+	long getSuspicions() {
+		return suspicions.sum();
+	}
+
+	@Override
+	public void connected() {
+		long now = System.currentTimeMillis();
+		lastReceivedTime = now;
+		failureDetector.reset(now);
+		compression.reset();
+		session.connected();
+		shouldGreet = true;
+		connected = true;
+	}
+
+	@Override
+	public void disconnected() {
+		connected = false;
+		heartbeatSentAt = 0;
+		compression.reset();
+		session.disconnected();
+	}
+
+	@Override
+	public void received(BaseDTO dto, int bytes) {
+		long now = System.currentTimeMillis();
+		lastReceivedTime = now;
+		failureDetector.heartbeat(now);
+		framesReceived.increment();
+		bytesReceived.add(bytes);
+
+		if (dto instanceof HeartbeatDTO) {
+			log.debug("Heartbeat received on lane {}", index);
+			// The server answers every heartbeat, the first one back closes the round trip
+			long sentAt = heartbeatSentAt;
+			if (sentAt != 0) {
+				heartbeatSentAt = 0;
+				heartbeatRtt.recordNanos(System.nanoTime() - sentAt);
+			}
+		} else if (dto instanceof HandshakeDTO handshakeDTO) {
+			CompressionTypesEnum negotiated = compression.negotiate(handshakeDTO.getCompressions());
+			log.info("Lane {} compresses with {}", index, negotiated);
+			if (session.isOffered() && session.getToken().equals(handshakeDTO.getSession())) {
+				resume(handshakeDTO.getLastReceived());
+			}
+		} else if (agora.received(this, dto)) {
+			session.accepted();
+		}
+	}
+
+	/**
+	 * Acknowledges what the server took before the connection broke and replays
+	 * the rest ahead of anything else, dropping retransmits of the same requests
+	 * already waiting so the order holds.
+	 */
+	private void resume(long peerLastReceived) {
+		for (RequestDTO requestDTO : session.confirm(peerLastReceived)) {
+			agora.received(this, new AcknowledgmentDTO(requestDTO.getId()));
+		}
+		List<RequestDTO> replay = session.resume(peerLastReceived);
+		if (!replay.isEmpty()) {
+			Set<UUID> replayed = new HashSet<>();
+			for (RequestDTO requestDTO : replay) {
+				replayed.add(requestDTO.getId());
+			}
+			controlQue.removeIf(queued -> replayed.contains(queued.getId()));
+			controlQue.addAll(replay);
+		}
+		log.info("Lane {} {} session, replaying {} request(s)", index,
+				peerLastReceived == AgoraSession.UNKNOWN ? "started a" : "resumed its", replay.size());
+		session.proceed();
+		wakeup();
+	}
+
+	@Override
+	public boolean canReceive() {
+		return !closing && credits.hasCredit();
+	}
+
+	@Override
+	public BaseDTO poll() {
+		if (shouldGreet) {
+			shouldGreet = false;
+			List<String> compressions = compression.getOffered() != CompressionTypesEnum.NONE
+					? List.of(compression.getOffered().name())
+					: List.of();
+			if (session.isOffered() || announcedCredits > 0) {
+				return new HandshakeDTO(UUID.randomUUID(), id, compressions,
+						session.isOffered() ? session.getToken() : null, session.getLastReceived(), announcedCredits);
+			}
+			if (!compressions.isEmpty()) {
+				return new HandshakeDTO(UUID.randomUUID(), id, compressions);
+			}
+			return new GreetingDTO(UUID.randomUUID(), id);
+		}
+		if (session.isAwaiting()) {
+			return null;
+		}
+		BaseDTO dto;
+		while ((dto = controlQue.poll()) != null) {
+			if (!(dto instanceof RequestDTO) || retransmitter.isPending(dto.getId())) {
+				return dto;
+			}
+		}
+		return que.poll();
+	}
+
+	@Override
+	public void sending(BaseDTO dto) {
+		if (dto instanceof RequestDTO || dto instanceof GreetingDTO) {
+			session.sending(dto);
+			retransmitter.sending(dto);
+		} else if (dto instanceof HeartbeatDTO && heartbeatSentAt == 0) {
+			heartbeatSentAt = System.nanoTime();
+		}
+	}
+
+	@Override
+	public void flushed(int frames, int bytes) {
+		lastSentTime = System.currentTimeMillis();
+		framesSent.add(frames);
+		bytesSent.add(bytes);
+		flushes.increment();
+	}
+
+}
@@ -0,0 +1,199 @@
+package filippos.bagordakis.agora.agora;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.dedup.AgoraDedupWindow;
+import filippos.bagordakis.agora.agora.dispatch.AgoraRequestAcknowledger;
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * One Agora server of the cluster with its lanes and the acknowledger for the
+ * requests it delivered. A node that fails its health checks for the whole
+ * ejection grace is ejected, nothing new is routed to it and what it still
+ * owes is moved to the others. It is taken back once it has passed them for
+ * as long again.
+ */
+class AgoraNode {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraNode.class);
+
+	private final int index;
+	private final String name;
+	private final AgoraLane[] lanes;
+	private final AgoraAcknowledger acknowledger;
+	private final AgoraRequestAcknowledger requestAcknowledger;
+
+	private volatile boolean ejected;
+	private long failingSince = -1;
+	private long passingSince = -1;
+	private final LongAdder ejections = new LongAdder();
+
+	/**
+	 * @param lanes        lane 0 carries acknowledgments and, when alone,
+	 *                     everything else
+	 * @param acknowledger batches acknowledgments onto lane 0, or null to send
+	 *                     them one by one
+	 * @param dedupWindow  remembers the requests received, or null
+	 */
+	AgoraNode(int index, String name, AgoraLane[] lanes, AgoraAcknowledger acknowledger,
+			AgoraDedupWindow dedupWindow) {
+		this.index = index;
+		this.name = name;
+		this.lanes = lanes;
+		this.acknowledger = acknowledger;
+		this.requestAcknowledger = new AgoraRequestAcknowledger() {
+
+			@Override
+			public void acknowledge(UUID id) {
+				// Marked first, a redelivery from now on is acknowledged again
+				if (dedupWindow != null) {
+					dedupWindow.acknowledged(id);
+				}
+				acknowledgeRequest(id);
+			}
+
+			@Override
+			public void release(UUID id) {
+				if (dedupWindow != null) {
+					dedupWindow.remove(id);
+				}
+			}
+
+			@Override
+			public void reply(ResponseDTO responseDTO) {
+				// Queued here even once ejected, failing over moves it with the rest
+				laneFor(responseDTO.getKeyword()).send(responseDTO, PrioritiesEnum.NORMAL);
+			}
+		};
+	}
+
+	/**
+	 * With more lanes requests are sharded over lanes 1..n by keyword.
+	 */
+	AgoraLane laneFor(String keyword) {
+		if (lanes.length == 1) {
+			return lanes[0];
+		}
+		int hash = keyword == null ? 0 : keyword.hashCode();
+		return lanes[1 + Math.floorMod(hash, lanes.length - 1)];
+	}
+
+	void acknowledgeRequest(UUID id) {
+		if (acknowledger != null) {
+			acknowledger.acknowledge(id);
+		} else {
+			lanes[0].enque(new AcknowledgmentDTO(id));
+		}
+	}
+
+	AgoraRequestAcknowledger getRequestAcknowledger() {
+		return requestAcknowledger;
+	}
+
+	/**
+	 * Requests queued or waiting for their acknowledgment on this server.
+	 */
+	int getOutstanding() {
+		int total = 0;
+		for (AgoraLane lane : lanes) {
+			total += lane.getRetransmitter().getInFlight() + lane.getQue().size();
+		}
+		return total;
+	}
+
+	/**
+	 * Runs the health checks and ejects or takes back the node. Returns true
+	 * when this call ejected it.
+	 */
+	boolean judge(long now, long maxAwaiting, long grace) {
+		String failure = check(now, maxAwaiting);
+		if (failure != null) {
+			passingSince = -1;
+			if (failingSince < 0) {
+				failingSince = now;
+			}
+			if (!ejected && now - failingSince >= grace) {
+				ejected = true;
+				ejections.increment();
+				log.warn("Ejecting Agora server {}, {}", name, failure);
+				return true;
+			}
+		} else {
+			failingSince = -1;
+			if (passingSince < 0) {
+				passingSince = now;
+			}
+			if (ejected && now - passingSince >= grace) {
+				ejected = false;
+				log.info("Agora server {} is healthy again", name);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * What is wrong with the server, or null if nothing is.
+	 */
+	private String check(long now, long maxAwaiting) {
+		for (AgoraLane lane : lanes) {
+			if (!lane.isConnected()) {
+				return "lane " + lane.getIndex() + " is not connected";
+			}
+			if (lane.isSuspected(now)) {
+				return "lane " + lane.getIndex() + " is suspected by the failure detector";
+			}
+			long awaiting = lane.getRetransmitter().getAwaitingMillis();
+			if (awaiting > maxAwaiting) {
+				return "lane " + lane.getIndex() + " got no acknowledgment for " + awaiting + "ms";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Takes back every request the server has not acknowledged yet.
+	 */
+	List<RequestDTO> evacuate() {
+		List<RequestDTO> evacuated = new ArrayList<>();
+		for (AgoraLane lane : lanes) {
+			evacuated.addAll(lane.evacuate());
+		}
+		return evacuated;
+	}
+
+	void flush() {
+		if (acknowledger != null) {
+			acknowledger.flush();
+		}
+	}
+
+	int getIndex() {
+		return index;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	AgoraLane[] getLanes() {
+		return lanes;
+	}
+
+	boolean isEjected() {
+		return ejected;
+	}
+
+	long getEjections() {
+		return ejections.sum();
+	}
+
+}
@@ -0,0 +1,104 @@
+package filippos.bagordakis.agora.agora.cluster;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Consistent hash ring over the servers of a cluster. Every server owns a
+ * number of points on the ring and a key belongs to the first point at or
+ * after its hash whose server is usable, so ejecting a server only moves the
+ * keys it owned and they all come back to it once it returns.
+ */
+public class AgoraHashRing {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final long[] points;
+	private final int[] owners;
+
+	/**
+	 * @param servers names of the servers, their position in the list being the
+	 *                index {@link #owner(long, IntPredicate)} returns
+	 */
+	public AgoraHashRing(List<String> servers, int pointsPerServer) {
+		int total = servers.size() * pointsPerServer;
+		long[][] entries = new long[total][];
+		int next = 0;
+		for (int server = 0; server < servers.size(); server++) {
+			for (int point = 0; point < pointsPerServer; point++) {
+				entries[next++] = new long[] { hash(servers.get(server) + "#" + point), server };
+			}
+		}
+		Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+		this.points = new long[total];
+		this.owners = new int[total];
+		for (int i = 0; i < total; i++) {
+			points[i] = entries[i][0];
+			owners[i] = (int) entries[i][1];
+		}
+	}
+
+	/**
+	 * Server the hash belongs to, skipping the ones that are not usable. When
+	 * none is the natural owner is returned.
+	 */
+	public int owner(long hash, IntPredicate usable) {
+		int start = Arrays.binarySearch(points, hash);
+		if (start < 0) {
+			start = -start - 1;
+		}
+		for (int i = 0; i < points.length; i++) {
+			int owner = owners[(start + i) % points.length];
+			if (usable.test(owner)) {
+				return owner;
+			}
+		}
+		return owners[start % points.length];
+	}
+
+	/**
+	 * Hash of the targets of a request, or of its keyword when it has none.
+	 */
+	public static long hash(List<String> targets, String keyword) {
+		long hash = FNV_OFFSET;
+		if (targets != null && !targets.isEmpty()) {
+			for (String target : targets) {
+				hash = mix(hash, target);
+			}
+		} else {
+			hash = mix(hash, keyword);
+		}
+		return finish(hash);
+	}
+
+	static long hash(String key) {
+		return finish(mix(FNV_OFFSET, key));
+	}
+
+	private static long mix(long hash, String value) {
+		if (value == null) {
+			return hash * FNV_PRIME;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		// Separates ["ab", "c"] from ["a", "bc"]
+		return (hash ^ 0xFFFF) * FNV_PRIME;
+	}
+
+	/**
+	 * FNV alone clusters similar names on the ring, the murmur finalizer spreads
+	 * them.
+	 */
+	private static long finish(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,38 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import filippos.bagordakis.agora.agora.enums.CodecTypesEnum;
+import filippos.bagordakis.agora.agora.session.AgoraSession;
+
+/**
+ * Turns {@link filippos.bagordakis.agora.common.dto.BaseDTO}s into bytes on the
+ * wire and back. One writer and one reader are created per connection.
+ */
+public interface AgoraCodec {
+
+	AgoraFrameWriter newWriter(OutputStream out) throws IOException;
+
+	AgoraFrameReader newReader(InputStream in) throws IOException;
+
+	static AgoraCodec of(CodecTypesEnum type) {
+		return of(type, AgoraCompression.none());
+	}
+
+	static AgoraCodec of(CodecTypesEnum type, AgoraCompression compression) {
+		return of(type, compression, AgoraSession.none());
+	}
+
+	/**
+	 * Compression and sessions only apply to the binary codec.
+	 */
+	static AgoraCodec of(CodecTypesEnum type, AgoraCompression compression, AgoraSession session) {
+		return switch (type) {
+		case BINARY -> new BinaryAgoraCodec(compression, session);
+		case SERIALIZATION -> new SerializationAgoraCodec();
+		};
+	}
+
+}
@@ -0,0 +1,166 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import filippos.bagordakis.agora.agora.enums.CompressionTypesEnum;
+
+/**
+ * Compression of frame bodies for one connection. Frames are only compressed
+ * once the peer agreed to an algorithm, while compressed frames are always
+ * read. Deflaters, inflaters and scratch space are kept per thread, so the
+ * writer and reader threads never allocate them again.
+ */
+public class AgoraCompression {
+
+	private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(1, true));
+	private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+	private static final ThreadLocal<byte[][]> SCRATCH = ThreadLocal.withInitial(() -> new byte[2][]);
+
+	private final CompressionTypesEnum offered;
+	private final int threshold;
+	private final int level;
+
+	private volatile CompressionTypesEnum negotiated = CompressionTypesEnum.NONE;
+
+	private final LongAdder compressedFrames = new LongAdder();
+	private final LongAdder bytesSaved = new LongAdder();
+	private final LongAdder compressNanos = new LongAdder();
+	private final LongAdder decompressNanos = new LongAdder();
+
+	public AgoraCompression(CompressionTypesEnum offered, int threshold, int level) {
+		this.offered = offered;
+		this.threshold = threshold;
+		this.level = level;
+	}
+
+	public static AgoraCompression none() {
+		return new AgoraCompression(CompressionTypesEnum.NONE, Integer.MAX_VALUE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public CompressionTypesEnum getOffered() {
+		return offered;
+	}
+
+	public CompressionTypesEnum getNegotiated() {
+		return negotiated;
+	}
+
+	/**
+	 * Picks the algorithm the peer answered with, provided it is the one offered.
+	 */
+	public CompressionTypesEnum negotiate(List<String> accepted) {
+		CompressionTypesEnum picked = CompressionTypesEnum.NONE;
+		if (offered != CompressionTypesEnum.NONE && accepted != null && accepted.contains(offered.name())) {
+			picked = offered;
+		}
+		negotiated = picked;
+		return picked;
+	}
+
+	public void reset() {
+		negotiated = CompressionTypesEnum.NONE;
+	}
+
+	/**
+	 * Replaces the bytes of the frame from offset on with their compressed form,
+	 * prefixed by their original length. Returns false and leaves the frame as
+	 * it is when compression is off, the body is under the threshold or it does
+	 * not get any smaller.
+	 */
+	boolean compress(AgoraFrameBuffer frame, int offset) throws IOException {
+		int length = frame.size() - offset;
+		if (negotiated != CompressionTypesEnum.DEFLATE || length < threshold) {
+			return false;
+		}
+		long start = System.nanoTime();
+		int limit = length - Integer.BYTES;
+		byte[] out = scratch(0, limit);
+
+		Deflater deflater = DEFLATERS.get();
+		deflater.reset();
+		deflater.setLevel(level);
+		deflater.setInput(frame.array(), offset, length);
+		deflater.finish();
+		int compressed = 0;
+		while (!deflater.finished() && compressed < limit) {
+			compressed += deflater.deflate(out, compressed, limit - compressed);
+		}
+		boolean smaller = deflater.finished();
+		if (smaller) {
+			frame.truncate(offset);
+			frame.data().writeInt(length);
+			frame.write(out, 0, compressed);
+			compressedFrames.increment();
+			bytesSaved.add(length - compressed - Integer.BYTES);
+		}
+		compressNanos.add(System.nanoTime() - start);
+		return smaller;
+	}
+
+	/**
+	 * Inflates the rest of a compressed frame. The result is only valid until
+	 * the next call on the same thread.
+	 */
+	ByteBuffer decompress(ByteBuffer frame) throws IOException {
+		long start = System.nanoTime();
+		int length = frame.getInt();
+		if (length < 0 || length > BinaryAgoraCodec.MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid compressed frame length " + length);
+		}
+		byte[] out = scratch(1, length);
+
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(frame);
+		try {
+			int inflated = 0;
+			while (inflated < length && !inflater.finished()) {
+				int read = inflater.inflate(out, inflated, length - inflated);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += read;
+			}
+			if (inflated != length) {
+				throw new IOException("Compressed frame inflated to " + inflated + " bytes instead of " + length);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt compressed frame", e);
+		}
+		decompressNanos.add(System.nanoTime() - start);
+		return ByteBuffer.wrap(out, 0, length);
+	}
+
+	private static byte[] scratch(int slot, int size) {
+		byte[][] buffers = SCRATCH.get();
+		byte[] buffer = buffers[slot];
+		if (buffer == null || buffer.length < size) {
+			buffer = new byte[Math.max(size, 4096)];
+			buffers[slot] = buffer;
+		}
+		return buffer;
+	}
+
+	public long getCompressedFrames() {
+		return compressedFrames.sum();
+	}
+
+	public long getBytesSaved() {
+		return bytesSaved.sum();
+	}
+
+	public long getCompressNanos() {
+		return compressNanos.sum();
+	}
+
+	public long getDecompressNanos() {
+		return decompressNanos.sum();
+	}
+
+}
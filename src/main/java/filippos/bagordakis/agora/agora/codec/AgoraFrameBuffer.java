@@ -0,0 +1,37 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+/**
+ * Reusable scratch space a single frame is encoded into before it is handed to
+ * the socket.
+ */
+public class AgoraFrameBuffer extends ByteArrayOutputStream {
+
+	private final DataOutputStream data = new DataOutputStream(this);
+
+	public AgoraFrameBuffer() {
+		super(256);
+	}
+
+	public DataOutputStream data() {
+		return data;
+	}
+
+	public byte[] array() {
+		return buf;
+	}
+
+	void truncate(int size) {
+		count = size;
+	}
+
+	void putInt(int index, int value) {
+		buf[index] = (byte) (value >>> 24);
+		buf[index + 1] = (byte) (value >>> 16);
+		buf[index + 2] = (byte) (value >>> 8);
+		buf[index + 3] = (byte) value;
+	}
+
+}
@@ -0,0 +1,16 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.IOException;
+
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+public interface AgoraFrameReader {
+
+	BaseDTO read() throws IOException, ClassNotFoundException;
+
+	/**
+	 * Bytes taken off the stream so far.
+	 */
+	long getBytesRead();
+
+}
@@ -0,0 +1,17 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.IOException;
+
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+public interface AgoraFrameWriter {
+
+	/**
+	 * Buffers the frame for the next {@link #flush()} and returns the number of
+	 * bytes it takes on the wire.
+	 */
+	int write(BaseDTO dto) throws IOException;
+
+	void flush() throws IOException;
+
+}
@@ -0,0 +1,407 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.agora.data.dto.HandshakeDTO;
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.session.AgoraSession;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.GreetingDTO;
+import filippos.bagordakis.agora.common.dto.HeartbeatDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Length prefixed binary codec. Every frame is laid out as
+ *
+ * <pre>
+ * int    length of everything that follows
+ * byte   frame type
+ * byte   flags
+ * long   id most significant bits
+ * long   id least significant bits
+ * ...    type specific body
+ * </pre>
+ *
+ * Strings are written as an int byte count (-1 for null) followed by UTF-8.
+ * When the {@link #COMPRESSED} flag is set the body is an int with its
+ * original length followed by the raw deflate stream of it. When the
+ * {@link #SEQUENCED} flag is set the id is followed by the long sequence number
+ * of the frame in its session, which is never compressed. Requests whose
+ * sender waits for a reply carry the {@link #REPLY_EXPECTED} flag.
+ */
+public class BinaryAgoraCodec implements AgoraCodec {
+
+	private static final Logger log = LoggerFactory.getLogger(BinaryAgoraCodec.class);
+
+	public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	public static final byte GREETING = 1;
+	public static final byte HEARTBEAT = 2;
+	public static final byte ACKNOWLEDGMENT = 3;
+	public static final byte REQUEST = 4;
+	public static final byte ACKNOWLEDGMENT_BATCH = 5;
+	public static final byte RESPONSE = 6;
+
+	public static final byte COMPRESSED = 0x01;
+	public static final byte SEQUENCED = 0x02;
+	public static final byte REPLY_EXPECTED = 0x04;
+
+	private static final int HEADER_LENGTH = Integer.BYTES + 2 + 2 * Long.BYTES;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final AgoraCompression compression;
+	private final AgoraSession session;
+
+	public BinaryAgoraCodec() {
+		this(AgoraCompression.none());
+	}
+
+	public BinaryAgoraCodec(AgoraCompression compression) {
+		this(compression, AgoraSession.none());
+	}
+
+	public BinaryAgoraCodec(AgoraCompression compression, AgoraSession session) {
+		this.compression = compression;
+		this.session = session;
+	}
+
+	@Override
+	public AgoraFrameWriter newWriter(OutputStream out) throws IOException {
+		return new Writer(new BufferedOutputStream(out, BUFFER_SIZE));
+	}
+
+	@Override
+	public AgoraFrameReader newReader(InputStream in) throws IOException {
+		return new Reader(new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE)));
+	}
+
+	/**
+	 * Encodes a whole frame, length prefix included, into the given buffer.
+	 */
+	public void encodeFrame(BaseDTO dto, AgoraFrameBuffer frame) throws IOException {
+		frame.reset();
+		frame.data().writeInt(0);
+		encode(dto, frame.data());
+		// Only payloads are worth it, acknowledgment batches are random ids
+		byte type = frame.array()[Integer.BYTES];
+		int bodyOffset = HEADER_LENGTH + ((frame.array()[Integer.BYTES + 1] & SEQUENCED) != 0 ? Long.BYTES : 0);
+		if ((type == REQUEST || type == RESPONSE) && compression.compress(frame, bodyOffset)) {
+			frame.array()[Integer.BYTES + 1] |= COMPRESSED;
+		}
+		int length = frame.size() - Integer.BYTES;
+		if (length > MAX_FRAME_LENGTH) {
+			throw new IOException("Frame of " + length + " bytes exceeds " + MAX_FRAME_LENGTH);
+		}
+		frame.putInt(0, length);
+	}
+
+	public void encode(BaseDTO dto, DataOutput out) throws IOException {
+		byte type = typeOf(dto);
+		long sequence = type == REQUEST || type == RESPONSE ? session.sequenceOf(dto) : 0;
+		out.writeByte(type);
+		int flags = sequence > 0 ? SEQUENCED : 0;
+		if (type == REQUEST && dto instanceof RawRequestDTO rawRequestDTO && rawRequestDTO.isReplyExpected()) {
+			flags |= REPLY_EXPECTED;
+		}
+		out.writeByte(flags);
+		out.writeLong(dto.getId().getMostSignificantBits());
+		out.writeLong(dto.getId().getLeastSignificantBits());
+		if (sequence > 0) {
+			out.writeLong(sequence);
+		}
+
+		switch (type) {
+		case GREETING -> {
+			writeString(out, ((GreetingDTO) dto).getName());
+			if (dto instanceof HandshakeDTO handshakeDTO) {
+				writeStrings(out, handshakeDTO.getCompressions());
+				if (handshakeDTO.getSession() != null) {
+					out.writeLong(handshakeDTO.getSession().getMostSignificantBits());
+					out.writeLong(handshakeDTO.getSession().getLeastSignificantBits());
+					out.writeLong(handshakeDTO.getLastReceived());
+				}
+				if (handshakeDTO.getCredits() > 0) {
+					out.writeInt(handshakeDTO.getCredits());
+				}
+			}
+		}
+		case REQUEST -> writeRequest(out, (RequestDTO) dto);
+		case RESPONSE -> {
+			ResponseDTO responseDTO = (ResponseDTO) dto;
+			writeRequest(out, responseDTO);
+			out.writeLong(responseDTO.getCorrelationId().getMostSignificantBits());
+			out.writeLong(responseDTO.getCorrelationId().getLeastSignificantBits());
+			writeString(out, responseDTO.getError());
+		}
+		case ACKNOWLEDGMENT_BATCH -> {
+			long[] ids = ((AcknowledgmentBatchDTO) dto).getPackedIds();
+			out.writeInt(ids.length / 2);
+			for (long bits : ids) {
+				out.writeLong(bits);
+			}
+		}
+		default -> {
+		}
+		}
+	}
+
+	private static void writeRequest(DataOutput out, RequestDTO requestDTO) throws IOException {
+		writeString(out, requestDTO.getKeyword());
+		writeStrings(out, requestDTO.getTargets());
+		if (requestDTO instanceof RawRequestDTO rawRequestDTO) {
+			writeBytes(out, rawRequestDTO.getPayload());
+		} else {
+			writeString(out, requestDTO.getJsonData());
+		}
+	}
+
+	private static void writeStrings(DataOutput out, List<String> values) throws IOException {
+		out.writeInt(values == null ? -1 : values.size());
+		if (values != null) {
+			for (String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	/**
+	 * Decodes a frame without its length prefix. Returns null for frame types
+	 * this codec does not know about. A frame cut short fails with an
+	 * {@link IOException} like any other broken stream, so the transport
+	 * reconnects.
+	 */
+	public BaseDTO decode(ByteBuffer frame) throws IOException {
+		if (frame.remaining() < HEADER_LENGTH - Integer.BYTES) {
+			throw new IOException("Frame of " + frame.remaining() + " bytes is shorter than its header");
+		}
+		try {
+			return decodeFrame(frame);
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed frame, " + e, e);
+		}
+	}
+
+	private BaseDTO decodeFrame(ByteBuffer frame) throws IOException {
+		byte type = frame.get();
+		byte flags = frame.get();
+		UUID id = new UUID(frame.getLong(), frame.getLong());
+		// Unnumbered frames clear the number too, one the handler turned away must not linger
+		session.receiving((flags & SEQUENCED) != 0 ? frame.getLong() : 0);
+		if ((flags & COMPRESSED) != 0) {
+			frame = compression.decompress(frame);
+		}
+
+		return switch (type) {
+		case GREETING -> {
+			String name = readString(frame);
+			// Plain greetings end after the name
+			if (!frame.hasRemaining()) {
+				yield new GreetingDTO(id, name);
+			}
+			List<String> compressions = readStrings(frame);
+			// Both trailing parts are optional and told apart by their length
+			UUID token = null;
+			long lastReceived = 0;
+			if (frame.remaining() >= 3 * Long.BYTES) {
+				token = new UUID(frame.getLong(), frame.getLong());
+				lastReceived = frame.getLong();
+			}
+			int credits = frame.remaining() >= Integer.BYTES ? frame.getInt() : 0;
+			yield new HandshakeDTO(id, name, compressions, token, lastReceived, credits);
+		}
+		case HEARTBEAT -> new HeartbeatDTO(id);
+		case ACKNOWLEDGMENT -> new AcknowledgmentDTO(id);
+		case ACKNOWLEDGMENT_BATCH -> {
+			int count = frame.getInt();
+			if (count < 0 || count > frame.remaining() / (2 * Long.BYTES)) {
+				throw new IOException("Acknowledgment batch of " + count + " overruns frame");
+			}
+			long[] ids = new long[count * 2];
+			frame.asLongBuffer().get(ids);
+			frame.position(frame.position() + ids.length * Long.BYTES);
+			yield new AcknowledgmentBatchDTO(id, ids);
+		}
+		case REQUEST -> {
+			String keyword = readString(frame);
+			List<String> targets = readStrings(frame);
+			yield new RawRequestDTO(id, keyword, targets, readBytes(frame), (flags & REPLY_EXPECTED) != 0);
+		}
+		case RESPONSE -> {
+			String keyword = readString(frame);
+			List<String> targets = readStrings(frame);
+			String jsonData = readString(frame);
+			UUID correlationId = new UUID(frame.getLong(), frame.getLong());
+			yield new ResponseDTO(id, keyword, targets, jsonData, correlationId, readString(frame));
+		}
+		default -> null;
+		};
+	}
+
+	private static List<String> readStrings(ByteBuffer frame) throws IOException {
+		int count = frame.getInt();
+		if (count < 0) {
+			return null;
+		}
+		if (count > frame.remaining() / Integer.BYTES) {
+			throw new IOException(count + " strings overrun frame");
+		}
+		List<String> values = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			values.add(readString(frame));
+		}
+		return values;
+	}
+
+	private static byte typeOf(BaseDTO dto) throws IOException {
+		if (dto instanceof ResponseDTO) {
+			return RESPONSE;
+		} else if (dto instanceof RequestDTO) {
+			return REQUEST;
+		} else if (dto instanceof AcknowledgmentBatchDTO) {
+			return ACKNOWLEDGMENT_BATCH;
+		} else if (dto instanceof AcknowledgmentDTO) {
+			return ACKNOWLEDGMENT;
+		} else if (dto instanceof HeartbeatDTO) {
+			return HEARTBEAT;
+		} else if (dto instanceof GreetingDTO) {
+			return GREETING;
+		}
+		throw new IOException(dto.getClass() + " is not supported");
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeBytes(DataOutput out, byte[] value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	/**
+	 * Copies a string out of the frame without decoding it, the frame buffer is
+	 * reused as soon as the frame is decoded.
+	 */
+	private static byte[] readBytes(ByteBuffer frame) throws IOException {
+		int length = frame.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > frame.remaining()) {
+			throw new IOException("String of " + length + " bytes overruns frame");
+		}
+		byte[] bytes = new byte[length];
+		frame.get(bytes);
+		return bytes;
+	}
+
+	private static String readString(ByteBuffer frame) throws IOException {
+		int length = frame.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > frame.remaining()) {
+			throw new IOException("String of " + length + " bytes overruns frame");
+		}
+		String value;
+		if (frame.hasArray()) {
+			value = new String(frame.array(), frame.arrayOffset() + frame.position(), length, StandardCharsets.UTF_8);
+			frame.position(frame.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			frame.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+
+	private class Writer implements AgoraFrameWriter {
+
+		private final OutputStream out;
+		private final AgoraFrameBuffer frame = new AgoraFrameBuffer();
+
+		private Writer(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public int write(BaseDTO dto) throws IOException {
+			encodeFrame(dto, frame);
+			out.write(frame.array(), 0, frame.size());
+			return frame.size();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+	}
+
+	private class Reader implements AgoraFrameReader {
+
+		private final DataInputStream in;
+		private byte[] buffer = new byte[256];
+		private long bytesRead;
+
+		private Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public BaseDTO read() throws IOException {
+			while (true) {
+				int length = in.readInt();
+				if (length < 0 || length > MAX_FRAME_LENGTH) {
+					throw new IOException("Invalid frame length " + length);
+				}
+				if (buffer.length < length) {
+					buffer = new byte[Math.max(length, buffer.length * 2)];
+				}
+				in.readFully(buffer, 0, length);
+				bytesRead += Integer.BYTES + length;
+
+				BaseDTO dto = decode(ByteBuffer.wrap(buffer, 0, length));
+				if (dto != null) {
+					return dto;
+				}
+				log.warn("Skipping frame of unknown type {}", buffer[0]);
+			}
+		}
+
+		@Override
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * Legacy codec speaking plain java serialization, kept for peers that have not
+ * moved to {@link BinaryAgoraCodec}.
+ */
+public class SerializationAgoraCodec implements AgoraCodec {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	@Override
+	public AgoraFrameWriter newWriter(OutputStream out) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		ObjectOutputStream objectOutputStream = new ObjectOutputStream(counter);
+		// The peer blocks on the stream header before it reads anything else
+		objectOutputStream.flush();
+		return new AgoraFrameWriter() {
+
+			@Override
+			public int write(BaseDTO dto) throws IOException {
+				long before = counter.count;
+				objectOutputStream.writeObject(dto);
+				// Drop the back reference table, otherwise it grows for the life of the stream
+				objectOutputStream.reset();
+				return (int) (counter.count - before);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				objectOutputStream.flush();
+			}
+		};
+	}
+
+	@Override
+	public AgoraFrameReader newReader(InputStream in) throws IOException {
+		CountingInputStream counter = new CountingInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		ObjectInputStream objectInputStream = new ObjectInputStream(counter);
+		return new AgoraFrameReader() {
+
+			@Override
+			public BaseDTO read() throws IOException, ClassNotFoundException {
+				return (BaseDTO) objectInputStream.readObject();
+			}
+
+			@Override
+			public long getBytesRead() {
+				return counter.count;
+			}
+		};
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = in.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		private CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,45 @@
+package filippos.bagordakis.agora.agora.data.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+
+/**
+ * Acknowledges several requests in one frame. Receiving it has the same effect
+ * as receiving an {@link AcknowledgmentDTO} for every id it carries; its own id
+ * only identifies the batch.
+ */
+public class AcknowledgmentBatchDTO extends AcknowledgmentDTO {
+
+	private static final long serialVersionUID = 4213617316046735512L;
+
+	private final long[] ids;
+
+	/**
+	 * @param ids most and least significant bits of every acknowledged id, one
+	 *            pair after the other
+	 */
+	public AcknowledgmentBatchDTO(UUID id, long[] ids) {
+		super(id);
+		this.ids = ids;
+	}
+
+	public int size() {
+		return ids.length / 2;
+	}
+
+	public long[] getPackedIds() {
+		return ids;
+	}
+
+	public List<UUID> getAcknowledged() {
+		List<UUID> acknowledged = new ArrayList<>(size());
+		for (int i = 0; i < ids.length; i += 2) {
+			acknowledged.add(new UUID(ids[i], ids[i + 1]));
+		}
+		return acknowledged;
+	}
+
+}
@@ -0,0 +1,71 @@
+package filippos.bagordakis.agora.agora.data.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import filippos.bagordakis.agora.common.dto.GreetingDTO;
+
+/**
+ * Greeting that also lists the compression algorithms the sender can read, in
+ * order of preference. The server answers with a handshake naming the one it
+ * picked, until then nothing is sent compressed. Peers that do not know about
+ * handshakes see a plain greeting.
+ * <p>
+ * It can also offer a resumable session, naming it and the highest sequence
+ * number received on it. A peer that agrees answers with the same session and
+ * what it received in turn, see
+ * {@link filippos.bagordakis.agora.agora.session.AgoraSession}.
+ * <p>
+ * A client also announces its inbound credit window, how many requests it
+ * takes in before it stops reading, so a server can hold back instead of
+ * filling the socket.
+ */
+public class HandshakeDTO extends GreetingDTO {
+
+	private static final long serialVersionUID = -2853404870632398711L;
+
+	private final List<String> compressions;
+	private final UUID session;
+	private final long lastReceived;
+	private final int credits;
+
+	public HandshakeDTO(UUID id, String name, List<String> compressions) {
+		this(id, name, compressions, null, 0);
+	}
+
+	public HandshakeDTO(UUID id, String name, List<String> compressions, UUID session, long lastReceived) {
+		this(id, name, compressions, session, lastReceived, 0);
+	}
+
+	public HandshakeDTO(UUID id, String name, List<String> compressions, UUID session, long lastReceived,
+			int credits) {
+		super(id, name);
+		this.compressions = compressions;
+		this.session = session;
+		this.lastReceived = lastReceived;
+		this.credits = credits;
+	}
+
+	public List<String> getCompressions() {
+		return compressions;
+	}
+
+	/**
+	 * Token of the offered session, or null if none is.
+	 */
+	public UUID getSession() {
+		return session;
+	}
+
+	public long getLastReceived() {
+		return lastReceived;
+	}
+
+	/**
+	 * Inbound credit window of the sender, 0 if it announces none.
+	 */
+	public int getCredits() {
+		return credits;
+	}
+
+}
@@ -0,0 +1,70 @@
+package filippos.bagordakis.agora.agora.data.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Request as it came off the wire, its json kept as the UTF-8 bytes of the
+ * frame. Handlers read their parameter straight from {@link #getPayload()},
+ * the string is only built if someone asks for {@link #getJsonData()}. It also
+ * carries whether the sender waits for a reply, only those requests get one.
+ */
+public class RawRequestDTO extends RequestDTO {
+
+	private static final long serialVersionUID = 7059172346617003421L;
+
+	private final byte[] payload;
+	private final boolean replyExpected;
+	private transient String jsonData;
+
+	public RawRequestDTO(UUID id, String keyword, List<String> targets, byte[] payload) {
+		this(id, keyword, targets, payload, false);
+	}
+
+	public RawRequestDTO(UUID id, String keyword, List<String> targets, byte[] payload, boolean replyExpected) {
+		super(id, keyword, targets, null);
+		this.payload = payload;
+		this.replyExpected = replyExpected;
+	}
+
+	/**
+	 * Copy of the request marked as waited for, so its handler replies.
+	 */
+	public static RawRequestDTO expectingReply(RequestDTO requestDTO) {
+		String json = requestDTO.getJsonData();
+		return new RawRequestDTO(requestDTO.getId(), requestDTO.getKeyword(), requestDTO.getTargets(),
+				json == null ? null : json.getBytes(StandardCharsets.UTF_8), true);
+	}
+
+	/**
+	 * The json as UTF-8, or null if the request has none. Must not be modified.
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	public boolean isReplyExpected() {
+		return replyExpected;
+	}
+
+	@Override
+	public String getJsonData() {
+		String json = jsonData;
+		if (json == null && payload != null) {
+			json = new String(payload, StandardCharsets.UTF_8);
+			jsonData = json;
+		}
+		return json;
+	}
+
+	/**
+	 * Peers on java serialization only know the plain request.
+	 */
+	private Object writeReplace() {
+		return new RequestDTO(getId(), getKeyword(), getTargets(), getJsonData());
+	}
+
+}
@@ -0,0 +1,38 @@
+package filippos.bagordakis.agora.agora.data.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Reply to a request, correlated by the id of that request. It travels like
+ * a request of the same keyword so it is acknowledged and retransmitted the
+ * same way, the server routes it back to whoever sent the request.
+ */
+public class ResponseDTO extends RequestDTO {
+
+	private static final long serialVersionUID = -3489120581364735180L;
+
+	private final UUID correlationId;
+	private final String error;
+
+	public ResponseDTO(UUID id, String keyword, List<String> targets, String jsonData, UUID correlationId,
+			String error) {
+		super(id, keyword, targets, jsonData);
+		this.correlationId = correlationId;
+		this.error = error;
+	}
+
+	public UUID getCorrelationId() {
+		return correlationId;
+	}
+
+	/**
+	 * Message of the exception the handler threw, or null if it succeeded.
+	 */
+	public String getError() {
+		return error;
+	}
+
+}
@@ -0,0 +1,31 @@
+package filippos.bagordakis.agora.agora.data.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Published when a request ran out of retransmissions without being
+ * acknowledged by the server.
+ */
+public class AgoraDeadLetterEvent extends ApplicationEvent {
+	private static final long serialVersionUID = 4127709136414085217L;
+
+	private final RequestDTO requestDTO;
+	private final int attempts;
+
+	public AgoraDeadLetterEvent(Object source, RequestDTO requestDTO, int attempts) {
+		super(source);
+		this.requestDTO = requestDTO;
+		this.attempts = attempts;
+	}
+
+	public RequestDTO getData() {
+		return requestDTO;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+}
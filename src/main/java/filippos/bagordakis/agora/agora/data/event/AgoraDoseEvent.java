@@ -0,0 +1,40 @@
+package filippos.bagordakis.agora.agora.data.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Published for every {@link filippos.bagordakis.agora.stoa.annotation.Dose}
+ * call once its request was handed to Agora, when
+ * {@code agora.stoa.publish-events} is set. It only tells listeners about the
+ * call, unlike {@link AgoraEvent} publishing it sends nothing.
+ */
+public class AgoraDoseEvent extends ApplicationEvent {
+	private static final long serialVersionUID = 6051398264716303985L;
+
+	private final RequestDTO requestDTO;
+	private final boolean durable;
+	private final PrioritiesEnum priority;
+
+	public AgoraDoseEvent(Object source, RequestDTO requestDTO, boolean durable, PrioritiesEnum priority) {
+		super(source);
+		this.requestDTO = requestDTO;
+		this.durable = durable;
+		this.priority = priority;
+	}
+
+	public RequestDTO getData() {
+		return requestDTO;
+	}
+
+	public boolean isDurable() {
+		return durable;
+	}
+
+	public PrioritiesEnum getPriority() {
+		return priority;
+	}
+
+}
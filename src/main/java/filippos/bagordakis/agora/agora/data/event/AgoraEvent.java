@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.springframework.context.ApplicationEvent;
 
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
 import filippos.bagordakis.agora.common.dto.RequestDTO;
 import filippos.bagordakis.agora.common.helper.AgoraHelper;
 
@@ -11,14 +12,35 @@ public class AgoraEvent extends ApplicationEvent {
 	private static final long serialVersionUID = -9018409911630405844L;
 
 	private final RequestDTO requestDTO;
+	private final boolean durable;
+	private final PrioritiesEnum priority;
 
 	public AgoraEvent(Object source, Object data, String keyword, List<String> targets) {
+		this(source, data, keyword, targets, false);
+	}
+
+	public AgoraEvent(Object source, Object data, String keyword, List<String> targets, boolean durable) {
+		this(source, data, keyword, targets, durable, PrioritiesEnum.NORMAL);
+	}
+
+	public AgoraEvent(Object source, Object data, String keyword, List<String> targets, boolean durable,
+			PrioritiesEnum priority) {
 		super(source);
 		this.requestDTO = AgoraHelper.objectToRequestDTO(data, keyword, targets);
+		this.durable = durable;
+		this.priority = priority;
 	}
 
 	public RequestDTO getData() {
 		return requestDTO;
 	}
 
+	public boolean isDurable() {
+		return durable;
+	}
+
+	public PrioritiesEnum getPriority() {
+		return priority;
+	}
+
 }
@@ -0,0 +1,209 @@
+package filippos.bagordakis.agora.agora.dedup;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ids of the requests received recently, to recognise redeliveries. The
+ * window is split into generations, each an open addressing table of the two
+ * longs of every id. New ids go into the newest generation, and once it holds
+ * a quarter of the window size or a quarter of the duration has passed, the
+ * oldest one is wiped and reused, so memory stays fixed however many requests
+ * pass through.
+ * <p>
+ * One generation more than those four is kept, so an id is remembered for at
+ * least the duration or until the window size of newer ids arrived, whichever
+ * comes first.
+ * <p>
+ * Each id also records whether its request was acknowledged yet, a redelivery
+ * of one still on its way through a dispatcher must not be acknowledged ahead
+ * of it.
+ */
+public class AgoraDedupWindow {
+
+	private static final int GENERATIONS = 4;
+	private static final int TABLES = GENERATIONS + 1;
+	private static final long PHI = 0x9E3779B97F4A7C15L;
+
+	private final long[][] tables = new long[TABLES][];
+	private final boolean[][] acknowledged = new boolean[TABLES][];
+	private final int[] sizes = new int[TABLES];
+	private final long[] startedAt = new long[TABLES];
+	private final int capacity;
+	private final int shift;
+	private final int mask;
+	private final long generationNanos;
+	private int current;
+
+	public AgoraDedupWindow(int size, long durationMillis) {
+		if (size < GENERATIONS || durationMillis <= 0) {
+			throw new IllegalArgumentException("Dedup window needs a size of at least " + GENERATIONS
+					+ " and a positive duration");
+		}
+		this.capacity = (size + GENERATIONS - 1) / GENERATIONS;
+		// Keep every table at most half full so probes stay short
+		int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		this.shift = Long.numberOfLeadingZeros(slots - 1);
+		this.mask = slots - 1;
+		this.generationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis) / GENERATIONS;
+		long now = System.nanoTime();
+		for (int i = 0; i < TABLES; i++) {
+			tables[i] = new long[slots * 2];
+			acknowledged[i] = new boolean[slots];
+			startedAt[i] = now;
+		}
+	}
+
+	/**
+	 * Remembers the id, returns false if it was already in the window.
+	 */
+	public synchronized boolean add(UUID id) {
+		long msb = id.getMostSignificantBits();
+		long lsb = id.getLeastSignificantBits();
+		if (msb == 0 && lsb == 0) {
+			// The empty slot marker, never a random id
+			return true;
+		}
+		rotate(System.nanoTime());
+		int home = home(msb, lsb);
+		for (long[] table : tables) {
+			if (find(table, home, msb, lsb) >= 0) {
+				return false;
+			}
+		}
+		long[] table = tables[current];
+		int slot = home;
+		while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot * 2] = msb;
+		table[slot * 2 + 1] = lsb;
+		acknowledged[current][slot] = false;
+		sizes[current]++;
+		return true;
+	}
+
+	/**
+	 * Marks the request of an id in the window as acknowledged.
+	 */
+	public synchronized void acknowledged(UUID id) {
+		long msb = id.getMostSignificantBits();
+		long lsb = id.getLeastSignificantBits();
+		int home = home(msb, lsb);
+		for (int generation = 0; generation < TABLES; generation++) {
+			int slot = find(tables[generation], home, msb, lsb);
+			if (slot >= 0) {
+				acknowledged[generation][slot] = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * True if the id is in the window and its request was acknowledged.
+	 */
+	public synchronized boolean isAcknowledged(UUID id) {
+		long msb = id.getMostSignificantBits();
+		long lsb = id.getLeastSignificantBits();
+		int home = home(msb, lsb);
+		for (int generation = 0; generation < TABLES; generation++) {
+			int slot = find(tables[generation], home, msb, lsb);
+			if (slot >= 0) {
+				return acknowledged[generation][slot];
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Forgets an id, for a request that was added but then turned away and is
+	 * to be delivered again.
+	 */
+	public synchronized void remove(UUID id) {
+		long msb = id.getMostSignificantBits();
+		long lsb = id.getLeastSignificantBits();
+		int home = home(msb, lsb);
+		for (int generation = 0; generation < TABLES; generation++) {
+			int slot = find(tables[generation], home, msb, lsb);
+			if (slot >= 0) {
+				delete(generation, slot);
+				sizes[generation]--;
+				return;
+			}
+		}
+	}
+
+	public synchronized int size() {
+		int total = 0;
+		for (int size : sizes) {
+			total += size;
+		}
+		return total;
+	}
+
+	/**
+	 * Starts a new generation when the newest is full, or as many as there are
+	 * periods gone by since it started, up to wiping the whole window.
+	 */
+	private void rotate(long now) {
+		long elapsed = now - startedAt[current];
+		int rotations = sizes[current] >= capacity ? 1 : 0;
+		if (elapsed >= generationNanos) {
+			rotations = (int) Math.min(TABLES, elapsed / generationNanos);
+		}
+		for (int i = 0; i < rotations; i++) {
+			current = (current + 1) % TABLES;
+			Arrays.fill(tables[current], 0);
+			sizes[current] = 0;
+			startedAt[current] = now;
+		}
+	}
+
+	private int home(long msb, long lsb) {
+		return (int) (((msb ^ lsb) * PHI) >>> shift);
+	}
+
+	private int find(long[] table, int slot, long msb, long lsb) {
+		while (true) {
+			long high = table[slot * 2];
+			long low = table[slot * 2 + 1];
+			if (high == msb && low == lsb) {
+				return slot;
+			}
+			if (high == 0 && low == 0) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Backward shift deletion, moving later entries of the probe run into the
+	 * hole so lookups never stop early.
+	 */
+	private void delete(int generation, int hole) {
+		long[] table = tables[generation];
+		boolean[] states = acknowledged[generation];
+		int slot = hole;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long high = table[slot * 2];
+			long low = table[slot * 2 + 1];
+			if (high == 0 && low == 0) {
+				break;
+			}
+			int home = home(high, low);
+			// Move the entry unless its home lies cyclically in (hole, slot]
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				table[hole * 2] = high;
+				table[hole * 2 + 1] = low;
+				states[hole] = states[slot];
+				hole = slot;
+			}
+		}
+		table[hole * 2] = 0;
+		table[hole * 2 + 1] = 0;
+	}
+
+}
@@ -0,0 +1,217 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.kripteia.KrypteiaBatchInvoker;
+
+/**
+ * Collects the requests of one keyword into batches of up to
+ * {@code batchSize} and calls the handler once per batch. A batch is cut when
+ * it is full or {@code linger} milliseconds after its first request. With no
+ * linger a free worker takes whatever has been collected, so batches grow only
+ * while the handler is busy. Requests are acknowledged after their batch was
+ * handled, a failed batch is left for the server to resend.
+ */
+public class AgoraBatchDispatcher implements AgoraDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraBatchDispatcher.class);
+
+	private final String keyword;
+	private final KrypteiaBatchInvoker invoker;
+	private final Executor executor;
+	private final ScheduledExecutorService timer;
+	private final int concurrency;
+	private final int queueCapacity;
+	private final int batchSize;
+	private final long linger;
+	private final AgoraCredits credits;
+
+	private record Entry(RequestDTO requestDTO, AgoraRequestAcknowledger acknowledger) {
+	}
+
+	private List<Entry> buffer;
+	private final ArrayDeque<List<Entry>> ready = new ArrayDeque<>();
+	private long generation;
+
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final AgoraHistogram latency = new AgoraHistogram();
+	private final LongAdder batches = new LongAdder();
+
+	public AgoraBatchDispatcher(String keyword, KrypteiaBatchInvoker invoker, Executor executor,
+			ScheduledExecutorService timer, int concurrency, int queueCapacity, int batchSize, long linger,
+			AgoraCredits credits) {
+		this.keyword = keyword;
+		this.invoker = invoker;
+		this.executor = executor;
+		this.timer = timer;
+		this.concurrency = concurrency;
+		this.queueCapacity = queueCapacity;
+		this.batchSize = batchSize;
+		this.linger = linger;
+		this.credits = credits;
+		this.buffer = new ArrayList<>(batchSize);
+	}
+
+	@Override
+	public boolean dispatch(RequestDTO requestDTO, AgoraRequestAcknowledger acknowledger) {
+		if (pending.incrementAndGet() > queueCapacity) {
+			pending.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+
+		synchronized (this) {
+			buffer.add(new Entry(requestDTO, acknowledger));
+			if (buffer.size() >= batchSize) {
+				cut();
+			} else if (buffer.size() == 1 && linger > 0) {
+				long current = generation;
+				timer.schedule(() -> lingered(current), linger, TimeUnit.MILLISECONDS);
+			}
+		}
+		schedule();
+		return true;
+	}
+
+	private void cut() {
+		ready.add(buffer);
+		buffer = new ArrayList<>(batchSize);
+		generation++;
+	}
+
+	private void lingered(long expected) {
+		synchronized (this) {
+			if (generation != expected || buffer.isEmpty()) {
+				return;
+			}
+			cut();
+		}
+		schedule();
+	}
+
+	private synchronized List<Entry> nextBatch() {
+		if (ready.isEmpty() && linger <= 0 && !buffer.isEmpty()) {
+			cut();
+		}
+		return ready.poll();
+	}
+
+	private synchronized boolean hasWork() {
+		return !ready.isEmpty() || (linger <= 0 && !buffer.isEmpty());
+	}
+
+	private void schedule() {
+		while (hasWork()) {
+			int current = active.get();
+			if (current >= concurrency) {
+				return;
+			}
+			if (active.compareAndSet(current, current + 1)) {
+				try {
+					executor.execute(this::drain);
+				} catch (RejectedExecutionException e) {
+					active.decrementAndGet();
+					log.warn("Executor refused work for keyword {}", keyword);
+				}
+				return;
+			}
+		}
+	}
+
+	private void drain() {
+		try {
+			List<Entry> batch = nextBatch();
+			if (batch != null) {
+				execute(batch);
+			}
+		} finally {
+			active.decrementAndGet();
+		}
+		schedule();
+	}
+
+	private void execute(List<Entry> batch) {
+		List<RequestDTO> requestDTOs = new ArrayList<>(batch.size());
+		for (Entry entry : batch) {
+			requestDTOs.add(entry.requestDTO());
+		}
+
+		long start = System.nanoTime();
+		try {
+			invoker.invoke(requestDTOs);
+			completed.add(batch.size());
+			batches.increment();
+			for (Entry entry : batch) {
+				entry.acknowledger().acknowledge(entry.requestDTO().getId());
+			}
+		} catch (Exception e) {
+			failed.add(batch.size());
+			log.error("Batch of {} for keyword {} failed", batch.size(), keyword, e);
+			// Left unacknowledged, the retransmits must not be taken for duplicates
+			for (Entry entry : batch) {
+				entry.acknowledger().release(entry.requestDTO().getId());
+			}
+		} finally {
+			latency.recordNanos(System.nanoTime() - start);
+			pending.addAndGet(-batch.size());
+			credits.release(batch.size());
+		}
+	}
+
+	public String getKeyword() {
+		return keyword;
+	}
+
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return pending.get();
+	}
+
+	@Override
+	public int getActive() {
+		return active.get();
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getCompleted() {
+		return completed.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public AgoraHistogram getLatency() {
+		return latency;
+	}
+
+}
@@ -0,0 +1,159 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.kripteia.KrypteiaInfo;
+
+/**
+ * Caps the invocations of one keyword on a shared executor. At most
+ * {@code concurrency} drain tasks run at a time and requests beyond the
+ * bounded que are refused, so a slow handler only ever holds its own share of
+ * the threads. Drain tasks give their thread back after a short run to stay
+ * fair to the other keywords on the same executor.
+ */
+public class AgoraBulkhead implements AgoraDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraBulkhead.class);
+
+	private static final int DRAIN_LIMIT = 64;
+
+	private final String keyword;
+	private final KrypteiaInfo krypteia;
+	private final AgoraReplier replier;
+	private final Executor executor;
+	private final int concurrency;
+	private final BlockingQueue<Entry> que;
+	private final AgoraCredits credits;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final AgoraHistogram latency = new AgoraHistogram();
+
+	private record Entry(RequestDTO requestDTO, AgoraRequestAcknowledger origin) {
+	}
+
+	public AgoraBulkhead(String keyword, KrypteiaInfo krypteia, Executor executor, int concurrency,
+			int queueCapacity, AgoraReplier replier, AgoraCredits credits) {
+		this.keyword = keyword;
+		this.krypteia = krypteia;
+		this.executor = executor;
+		this.concurrency = concurrency;
+		this.que = new ArrayBlockingQueue<>(queueCapacity);
+		this.replier = replier;
+		this.credits = credits;
+	}
+
+	@Override
+	public boolean dispatch(RequestDTO requestDTO, AgoraRequestAcknowledger acknowledger) {
+		if (!que.offer(new Entry(requestDTO, acknowledger))) {
+			rejected.increment();
+			return false;
+		}
+		acknowledger.acknowledge(requestDTO.getId());
+		schedule();
+		return true;
+	}
+
+	private void schedule() {
+		while (!que.isEmpty()) {
+			int current = active.get();
+			if (current >= concurrency) {
+				return;
+			}
+			if (active.compareAndSet(current, current + 1)) {
+				try {
+					executor.execute(this::drain);
+				} catch (RejectedExecutionException e) {
+					active.decrementAndGet();
+					log.warn("Executor refused work for keyword {}", keyword);
+				}
+				return;
+			}
+		}
+	}
+
+	private void drain() {
+		try {
+			Entry entry;
+			for (int i = 0; i < DRAIN_LIMIT && (entry = que.poll()) != null; i++) {
+				execute(entry.requestDTO(), entry.origin());
+			}
+		} finally {
+			active.decrementAndGet();
+		}
+		// Picks up requests that arrived while this task was finishing
+		schedule();
+	}
+
+	private void execute(RequestDTO requestDTO, AgoraRequestAcknowledger origin) {
+		long start = System.nanoTime();
+		try {
+			Object result = krypteia.execute(requestDTO);
+			completed.increment();
+			if (replier != null) {
+				replier.reply(requestDTO, origin, result, null);
+			}
+		} catch (Exception e) {
+			failed.increment();
+			log.error("Krypteia for keyword {} failed", keyword, e);
+			if (replier != null) {
+				replier.reply(requestDTO, origin, null, e);
+			}
+		} finally {
+			latency.recordNanos(System.nanoTime() - start);
+			credits.release(1);
+		}
+	}
+
+	public String getKeyword() {
+		return keyword;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return que.size();
+	}
+
+	@Override
+	public int getActive() {
+		return active.get();
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getCompleted() {
+		return completed.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public AgoraHistogram getLatency() {
+		return latency;
+	}
+
+}
@@ -0,0 +1,30 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Runs the requests of one keyword. A dispatcher that refuses a request leaves
+ * it unacknowledged so the server sends it again later, accepted requests are
+ * passed to the acknowledger once the dispatcher takes responsibility for them.
+ */
+public interface AgoraDispatcher {
+
+	boolean dispatch(RequestDTO requestDTO, AgoraRequestAcknowledger acknowledger);
+
+	int getQueueDepth();
+
+	int getActive();
+
+	long getRejected();
+
+	long getCompleted();
+
+	long getFailed();
+
+	/**
+	 * How long handling a request, or a batch of them, took.
+	 */
+	AgoraHistogram getLatency();
+
+}
@@ -0,0 +1,80 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Pulls the ordering key out of a json payload. A plain name is looked up
+ * among the top level fields with the streaming parser, which stops as soon as
+ * it is found. A name starting with {@code /} is a json pointer into nested
+ * objects and needs the whole tree.
+ */
+public class AgoraKeyExtractor {
+
+	private final ObjectMapper objectMapper;
+	private final String field;
+	private final JsonPointer pointer;
+
+	public AgoraKeyExtractor(ObjectMapper objectMapper, String orderBy) {
+		this.objectMapper = objectMapper;
+		if (orderBy.startsWith("/")) {
+			this.field = null;
+			this.pointer = JsonPointer.compile(orderBy);
+		} else {
+			this.field = orderBy;
+			this.pointer = null;
+		}
+	}
+
+	/**
+	 * Returns the key as text, or null if the payload does not have it.
+	 */
+	public String extract(RequestDTO requestDTO) throws IOException {
+		JsonParser parser;
+		if (requestDTO instanceof RawRequestDTO rawRequestDTO) {
+			if (rawRequestDTO.getPayload() == null) {
+				return null;
+			}
+			parser = objectMapper.getFactory().createParser(rawRequestDTO.getPayload());
+		} else {
+			if (requestDTO.getJsonData() == null) {
+				return null;
+			}
+			parser = objectMapper.getFactory().createParser(requestDTO.getJsonData());
+		}
+		if (pointer != null) {
+			try (parser) {
+				JsonNode node = objectMapper.readTree(parser);
+				node = node == null ? null : node.at(pointer);
+				return node == null || node.isMissingNode() || node.isNull() ? null : node.asText();
+			}
+		}
+
+		try (parser) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (field.equals(name)) {
+					if (value == JsonToken.VALUE_NULL) {
+						return null;
+					}
+					return value.isScalarValue() ? parser.getText() : objectMapper.readTree(parser).toString();
+				}
+				parser.skipChildren();
+			}
+		}
+		return null;
+	}
+
+}
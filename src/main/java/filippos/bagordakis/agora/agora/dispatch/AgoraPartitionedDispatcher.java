@@ -0,0 +1,124 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.kripteia.KrypteiaInfo;
+
+/**
+ * Runs the requests of one keyword on the partition their key hashes to, so
+ * requests with the same key are handled one at a time and in the order they
+ * arrived. Payloads without the key all go to the partition of the keyword.
+ */
+public class AgoraPartitionedDispatcher implements AgoraDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraPartitionedDispatcher.class);
+
+	private final String keyword;
+	private final KrypteiaInfo krypteia;
+	private final AgoraReplier replier;
+	private final AgoraPartitions partitions;
+	private final AgoraKeyExtractor keyExtractor;
+	private final AgoraCredits credits;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final AgoraHistogram latency = new AgoraHistogram();
+
+	public AgoraPartitionedDispatcher(String keyword, KrypteiaInfo krypteia, AgoraPartitions partitions,
+			AgoraKeyExtractor keyExtractor, AgoraReplier replier, AgoraCredits credits) {
+		this.keyword = keyword;
+		this.krypteia = krypteia;
+		this.partitions = partitions;
+		this.keyExtractor = keyExtractor;
+		this.replier = replier;
+		this.credits = credits;
+	}
+
+	@Override
+	public boolean dispatch(RequestDTO requestDTO, AgoraRequestAcknowledger acknowledger) {
+		String key;
+		try {
+			key = keyExtractor.extract(requestDTO);
+		} catch (Exception e) {
+			log.warn("Could not read the ordering key of request {} for keyword {}", requestDTO.getId(), keyword, e);
+			key = null;
+		}
+
+		queued.incrementAndGet();
+		if (!partitions.submit(key == null ? keyword.hashCode() : key.hashCode(), () -> execute(requestDTO, acknowledger))) {
+			queued.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+		acknowledger.acknowledge(requestDTO.getId());
+		return true;
+	}
+
+	private void execute(RequestDTO requestDTO, AgoraRequestAcknowledger origin) {
+		queued.decrementAndGet();
+		active.incrementAndGet();
+		long start = System.nanoTime();
+		try {
+			Object result = krypteia.execute(requestDTO);
+			completed.increment();
+			if (replier != null) {
+				replier.reply(requestDTO, origin, result, null);
+			}
+		} catch (Exception e) {
+			failed.increment();
+			log.error("Krypteia for keyword {} failed", keyword, e);
+			if (replier != null) {
+				replier.reply(requestDTO, origin, null, e);
+			}
+		} finally {
+			latency.recordNanos(System.nanoTime() - start);
+			active.decrementAndGet();
+			credits.release(1);
+		}
+	}
+
+	public String getKeyword() {
+		return keyword;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	@Override
+	public int getActive() {
+		return active.get();
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getCompleted() {
+		return completed.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public AgoraHistogram getLatency() {
+		return latency;
+	}
+
+}
@@ -0,0 +1,83 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fixed set of single-consumer partitions. Every partition has one thread and
+ * one que, so tasks submitted with the same hash run one after the other in
+ * submission order while different partitions run in parallel.
+ */
+public class AgoraPartitions {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraPartitions.class);
+
+	private final Partition[] partitions;
+
+	public AgoraPartitions(int count, int queueCapacity) {
+		this.partitions = new Partition[count];
+		for (int i = 0; i < count; i++) {
+			partitions[i] = new Partition(i, queueCapacity);
+			partitions[i].thread.start();
+		}
+	}
+
+	public boolean submit(int hash, Runnable task) {
+		return partitions[partitionOf(hash)].que.offer(task);
+	}
+
+	public int partitionOf(int hash) {
+		return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+	}
+
+	public int getPartitionCount() {
+		return partitions.length;
+	}
+
+	public int getQueueDepth(int partition) {
+		return partitions[partition].que.size();
+	}
+
+	public void close() {
+		for (Partition partition : partitions) {
+			partition.running = false;
+			partition.thread.interrupt();
+		}
+	}
+
+	private static class Partition implements Runnable {
+
+		private final BlockingQueue<Runnable> que;
+		private final Thread thread;
+		private volatile boolean running = true;
+
+		private Partition(int index, int queueCapacity) {
+			this.que = new ArrayBlockingQueue<>(queueCapacity);
+			this.thread = new Thread(this, "agora-partition-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					Runnable task = que.poll(1, TimeUnit.SECONDS);
+					if (task != null) {
+						task.run();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (RuntimeException e) {
+					log.error("Partition task failed", e);
+				}
+			}
+		}
+
+	}
+
+}
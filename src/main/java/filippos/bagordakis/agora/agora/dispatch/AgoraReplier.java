@@ -0,0 +1,14 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Sends the outcome of a handler back to the sender of the request, over the
+ * server it came in from.
+ */
+@FunctionalInterface
+public interface AgoraReplier {
+
+	void reply(RequestDTO requestDTO, AgoraRequestAcknowledger origin, Object result, Exception error);
+
+}
@@ -0,0 +1,21 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import java.util.UUID;
+
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+
+/**
+ * The server a request came in from, as the dispatcher sees it. Acknowledged
+ * requests are done with, released ones failed before they could be
+ * acknowledged and are left for the server to send again. Replies go back
+ * over the same server.
+ */
+public interface AgoraRequestAcknowledger {
+
+	void acknowledge(UUID id);
+
+	void release(UUID id);
+
+	void reply(ResponseDTO responseDTO);
+
+}
@@ -0,0 +1,6 @@
+package filippos.bagordakis.agora.agora.enums;
+
+public enum CompressionTypesEnum {
+
+	NONE, DEFLATE
+}
@@ -0,0 +1,6 @@
+package filippos.bagordakis.agora.agora.enums;
+
+public enum OverflowPoliciesEnum {
+
+	BLOCK, REJECT, DROP_OLDEST, SPILL
+}
@@ -0,0 +1,9 @@
+package filippos.bagordakis.agora.agora.enums;
+
+/**
+ * Outbound priority of a request, highest first.
+ */
+public enum PrioritiesEnum {
+
+	HIGH, NORMAL, LOW
+}
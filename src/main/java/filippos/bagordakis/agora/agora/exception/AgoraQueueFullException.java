@@ -0,0 +1,11 @@
+package filippos.bagordakis.agora.agora.exception;
+
+public class AgoraQueueFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 2961870410419436412L;
+
+	public AgoraQueueFullException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,15 @@
+package filippos.bagordakis.agora.agora.exception;
+
+public class AgoraReplyException extends RuntimeException {
+
+	private static final long serialVersionUID = -6038170845271941563L;
+
+	public AgoraReplyException(String message) {
+		super(message);
+	}
+
+	public AgoraReplyException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
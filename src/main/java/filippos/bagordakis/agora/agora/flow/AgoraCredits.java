@@ -0,0 +1,93 @@
+package filippos.bagordakis.agora.agora.flow;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Inbound credit window. Every request handed to a dispatcher takes a credit
+ * and gives it back once its handler is done, and the transports stop reading
+ * while no credit is left so a burst stays in the socket buffers and TCP pushes
+ * back on the server instead of the heap filling up.
+ * <p>
+ * Readers check for credit between frames, so the window can be overdrawn by
+ * what was already decoded. Reading resumes once half the window is free
+ * again rather than on every single credit, which keeps the transports from
+ * flapping. A window of 0 only counts what is in flight and never stops
+ * anyone.
+ */
+public class AgoraCredits {
+
+	private final int window;
+	private final int resumeAt;
+	private final AtomicInteger available;
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+	private final LongAdder exhausted = new LongAdder();
+
+	public AgoraCredits(int window) {
+		this.window = Math.max(0, window);
+		this.resumeAt = Math.max(1, this.window / 2);
+		this.available = new AtomicInteger(this.window);
+	}
+
+	/**
+	 * Whether a reader may take in another frame.
+	 */
+	public boolean hasCredit() {
+		return window == 0 || available.get() > 0;
+	}
+
+	public void take() {
+		if (available.decrementAndGet() == 0 && window > 0) {
+			exhausted.increment();
+		}
+	}
+
+	public void release(int credits) {
+		int after = available.addAndGet(credits);
+		if (window > 0 && after >= resumeAt && after - credits < resumeAt) {
+			for (Runnable listener : listeners) {
+				listener.run();
+			}
+		}
+	}
+
+	/**
+	 * Registers a callback for when a paused reader may go on, run on the thread
+	 * that gave the credits back.
+	 */
+	public void onAvailable(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Credits left, negative while the window is overdrawn and 0 without one.
+	 */
+	public int getAvailable() {
+		return window == 0 ? 0 : available.get();
+	}
+
+	/**
+	 * Requests taken in but not handled yet.
+	 */
+	public int getInFlight() {
+		return window - available.get();
+	}
+
+	/**
+	 * Times the window ran out.
+	 */
+	public long getExhausted() {
+		return exhausted.sum();
+	}
+
+}
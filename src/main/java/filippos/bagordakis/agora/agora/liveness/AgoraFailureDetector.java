@@ -0,0 +1,23 @@
+package filippos.bagordakis.agora.agora.liveness;
+
+/**
+ * Decides whether the server is still there from the arrival times of the
+ * frames it sends. Every inbound frame counts, not only heartbeats. Called
+ * from the reading thread and the heartbeat timer concurrently.
+ */
+public interface AgoraFailureDetector {
+
+	/**
+	 * A frame arrived at {@code now}, in milliseconds.
+	 */
+	void heartbeat(long now);
+
+	boolean isAvailable(long now);
+
+	/**
+	 * Forgets the history, counting {@code now} as the first arrival. Called
+	 * whenever the connection is (re)established.
+	 */
+	void reset(long now);
+
+}
@@ -0,0 +1,107 @@
+package filippos.bagordakis.agora.agora.liveness;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al.). Keeps a window of frame
+ * inter-arrival times and reports phi, the -log10 probability that a frame is
+ * still on its way after the current silence, assuming normally distributed
+ * arrivals. The server is suspected once phi reaches the threshold, so the
+ * verdict follows the actual traffic instead of one fixed timeout.
+ * <p>
+ * Under load the window fills with near zero intervals, the minimum standard
+ * deviation and the acceptable pause keep that from turning the first quiet
+ * second into a suspicion.
+ */
+public class AgoraPhiAccrualDetector implements AgoraFailureDetector {
+
+	private final double threshold;
+	private final long minStdDeviation;
+	private final long acceptablePause;
+	private final long firstEstimate;
+
+	private final long[] intervals;
+	private int count;
+	private int next;
+	private double sum;
+	private double sumOfSquares;
+	private volatile long last;
+
+	public AgoraPhiAccrualDetector(double threshold, int maxSamples, long minStdDeviation, long acceptablePause,
+			long firstEstimate) {
+		if (threshold <= 0 || maxSamples < 2 || minStdDeviation <= 0 || acceptablePause < 0 || firstEstimate <= 0) {
+			throw new IllegalArgumentException("Invalid phi accrual settings");
+		}
+		this.threshold = threshold;
+		this.minStdDeviation = minStdDeviation;
+		this.acceptablePause = acceptablePause;
+		this.firstEstimate = firstEstimate;
+		this.intervals = new long[maxSamples];
+		reset(System.currentTimeMillis());
+	}
+
+	@Override
+	public void heartbeat(long now) {
+		// Frames of the same millisecond add nothing but lock traffic
+		if (now == last) {
+			return;
+		}
+		synchronized (this) {
+			long interval = now - last;
+			if (interval > 0) {
+				sample(interval);
+				last = now;
+			}
+		}
+	}
+
+	@Override
+	public boolean isAvailable(long now) {
+		return phi(now) < threshold;
+	}
+
+	@Override
+	public synchronized void reset(long now) {
+		count = 0;
+		next = 0;
+		sum = 0;
+		sumOfSquares = 0;
+		// Two samples around the estimate so the first silence is judged by it
+		long deviation = firstEstimate / 4;
+		sample(firstEstimate - deviation);
+		sample(firstEstimate + deviation);
+		last = now;
+	}
+
+	public synchronized double phi(long now) {
+		double mean = sum / count;
+		double variance = sumOfSquares / count - mean * mean;
+		double stdDeviation = Math.max(Math.sqrt(Math.max(variance, 0)), minStdDeviation);
+		return phi(now - last, mean + acceptablePause, stdDeviation);
+	}
+
+	private void sample(long interval) {
+		if (count == intervals.length) {
+			long oldest = intervals[next];
+			sum -= oldest;
+			sumOfSquares -= (double) oldest * oldest;
+		} else {
+			count++;
+		}
+		intervals[next] = interval;
+		next = (next + 1) % intervals.length;
+		sum += interval;
+		sumOfSquares += (double) interval * interval;
+	}
+
+	/**
+	 * Logistic approximation of the normal CDF, as used by Akka and Cassandra.
+	 */
+	static double phi(long elapsed, double mean, double stdDeviation) {
+		double y = (elapsed - mean) / stdDeviation;
+		double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+		if (elapsed > mean) {
+			return -Math.log10(e / (1.0 + e));
+		}
+		return -Math.log10(1.0 - 1.0 / (1.0 + e));
+	}
+
+}
@@ -0,0 +1,31 @@
+package filippos.bagordakis.agora.agora.liveness;
+
+/**
+ * Suspects the server once nothing arrived for a fixed time.
+ */
+public class AgoraTimeoutDetector implements AgoraFailureDetector {
+
+	private final long timeout;
+	private volatile long last;
+
+	public AgoraTimeoutDetector(long timeout) {
+		this.timeout = timeout;
+		this.last = System.currentTimeMillis();
+	}
+
+	@Override
+	public void heartbeat(long now) {
+		last = now;
+	}
+
+	@Override
+	public boolean isAvailable(long now) {
+		return now - last <= timeout;
+	}
+
+	@Override
+	public void reset(long now) {
+		last = now;
+	}
+
+}
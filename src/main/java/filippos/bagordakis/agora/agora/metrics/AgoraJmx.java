@@ -0,0 +1,67 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the Agora MXBeans with the platform MBean server under
+ * {@value #DOMAIN}. Failing to register only costs visibility, so it is logged
+ * and never thrown.
+ */
+public final class AgoraJmx {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraJmx.class);
+
+	public static final String DOMAIN = "filippos.bagordakis.agora";
+
+	private AgoraJmx() {
+	}
+
+	public static ObjectName agoraName(String id) {
+		return name("type=Agora,name=" + ObjectName.quote(id));
+	}
+
+	public static ObjectName kripteiaName(String keyword) {
+		return name("type=Kripteia,keyword=" + ObjectName.quote(keyword));
+	}
+
+	private static ObjectName name(String properties) {
+		try {
+			return new ObjectName(DOMAIN + ":" + properties);
+		} catch (JMException e) {
+			throw new IllegalArgumentException(properties, e);
+		}
+	}
+
+	public static boolean register(ObjectName name, Object mbean) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(mbean, name);
+			return true;
+		} catch (JMException e) {
+			log.warn("Could not register {} : {}", name, e.getMessage());
+			return false;
+		}
+	}
+
+	public static void unregister(ObjectName name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			log.warn("Could not unregister {} : {}", name, e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+/**
+ * Handling of one keyword, latencies in microseconds.
+ */
+public interface AgoraKripteiaMXBean {
+
+	String getKeyword();
+
+	int getQueueDepth();
+
+	int getActive();
+
+	long getRejected();
+
+	long getCompleted();
+
+	long getFailed();
+
+	double getLatencyMean();
+
+	long getLatencyP50();
+
+	long getLatencyP99();
+
+	long getLatencyMax();
+
+}
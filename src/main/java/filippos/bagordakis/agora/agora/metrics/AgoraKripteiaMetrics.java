@@ -0,0 +1,65 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+import filippos.bagordakis.agora.agora.dispatch.AgoraDispatcher;
+
+public class AgoraKripteiaMetrics implements AgoraKripteiaMXBean {
+
+	private final String keyword;
+	private final AgoraDispatcher dispatcher;
+
+	public AgoraKripteiaMetrics(String keyword, AgoraDispatcher dispatcher) {
+		this.keyword = keyword;
+		this.dispatcher = dispatcher;
+	}
+
+	@Override
+	public String getKeyword() {
+		return keyword;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return dispatcher.getQueueDepth();
+	}
+
+	@Override
+	public int getActive() {
+		return dispatcher.getActive();
+	}
+
+	@Override
+	public long getRejected() {
+		return dispatcher.getRejected();
+	}
+
+	@Override
+	public long getCompleted() {
+		return dispatcher.getCompleted();
+	}
+
+	@Override
+	public long getFailed() {
+		return dispatcher.getFailed();
+	}
+
+	@Override
+	public double getLatencyMean() {
+		return dispatcher.getLatency().getMean();
+	}
+
+	@Override
+	public long getLatencyP50() {
+		return dispatcher.getLatency().getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getLatencyP99() {
+		return dispatcher.getLatency().getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getLatencyMax() {
+		return dispatcher.getLatency().getMax();
+	}
+
+}
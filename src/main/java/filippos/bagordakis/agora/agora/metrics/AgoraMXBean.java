@@ -0,0 +1,85 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+/**
+ * Client side view of the connection to the Agora server, latencies in
+ * microseconds.
+ */
+public interface AgoraMXBean {
+
+	int getLaneCount();
+
+	int getServerCount();
+
+	int getHealthyServers();
+
+	long getEjections();
+
+	long getFailedOver();
+
+	int getQueueDepth();
+
+	long getQueueRejections();
+
+	long getQueueDrops();
+
+	long getQueueSpills();
+
+	long getQueueingDelayHighP99();
+
+	long getQueueingDelayNormalP99();
+
+	long getQueueingDelayLowP99();
+
+	int getOutboxPending();
+
+	long getFramesSent();
+
+	long getBytesSent();
+
+	long getFramesReceived();
+
+	long getBytesReceived();
+
+	long getFlushes();
+
+	int getInFlight();
+
+	long getRetransmits();
+
+	long getDeadLetters();
+
+	long getAckLatencyP50();
+
+	long getAckLatencyP99();
+
+	long getAckLatencyMax();
+
+	long getHeartbeatRttP50();
+
+	long getHeartbeatRttP99();
+
+	long getSuspicions();
+
+	long getSessionResumptions();
+
+	long getSessionReplays();
+
+	int getInboundInFlight();
+
+	int getInboundCredits();
+
+	long getInboundStalls();
+
+	int getPendingReplies();
+
+	long getReplyTimeouts();
+
+	long getCompressedFrames();
+
+	long getCompressionBytesSaved();
+
+	long getUnknownKeywordDrops();
+
+	long getDuplicatesSuppressed();
+
+}
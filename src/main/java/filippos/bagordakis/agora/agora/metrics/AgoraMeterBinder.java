@@ -0,0 +1,112 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import filippos.bagordakis.agora.agora.Agora;
+import filippos.bagordakis.agora.agora.AgoraDistributionHandler;
+import filippos.bagordakis.agora.agora.dispatch.AgoraDispatcher;
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the Agora counters to Micrometer. Nothing is copied, every meter
+ * reads the live value when the registry asks for it, and latencies are
+ * published as their median, 99th percentile and maximum.
+ */
+public class AgoraMeterBinder implements MeterBinder {
+
+	private static final double[] QUANTILES = { 0.5, 0.99 };
+
+	private final Agora agora;
+	private final AgoraDistributionHandler agoraDistributionHandler;
+
+	public AgoraMeterBinder(Agora agora, AgoraDistributionHandler agoraDistributionHandler) {
+		this.agora = agora;
+		this.agoraDistributionHandler = agoraDistributionHandler;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		gauge(registry, "agora.queue.depth", agora, Agora::getQueueDepth);
+		gauge(registry, "agora.outbox.pending", agora, Agora::getOutboxPending);
+		gauge(registry, "agora.inflight", agora, Agora::getInFlight);
+		gauge(registry, "agora.replies.pending", agora, Agora::getPendingReplies);
+		gauge(registry, "agora.inbound.inflight", agora, Agora::getInboundInFlight);
+		gauge(registry, "agora.inbound.credits", agora, Agora::getInboundCredits);
+		gauge(registry, "agora.cluster.healthy", agora, Agora::getHealthyServers);
+
+		counter(registry, "agora.queue.rejected", agora, Agora::getQueueRejections, null);
+		counter(registry, "agora.queue.dropped", agora, Agora::getQueueDrops, null);
+		counter(registry, "agora.queue.spilled", agora, Agora::getQueueSpills, null);
+		counter(registry, "agora.frames.sent", agora, Agora::getFramesSent, null);
+		counter(registry, "agora.frames.received", agora, Agora::getFramesReceived, null);
+		counter(registry, "agora.bytes.sent", agora, Agora::getBytesSent, "bytes");
+		counter(registry, "agora.bytes.received", agora, Agora::getBytesReceived, "bytes");
+		counter(registry, "agora.flushes", agora, Agora::getFlushes, null);
+		counter(registry, "agora.retransmits", agora, Agora::getRetransmits, null);
+		counter(registry, "agora.dead.letters", agora, Agora::getDeadLetters, null);
+		counter(registry, "agora.suspicions", agora, Agora::getSuspicions, null);
+		counter(registry, "agora.session.resumptions", agora, Agora::getSessionResumptions, null);
+		counter(registry, "agora.session.replays", agora, Agora::getSessionReplays, null);
+		counter(registry, "agora.replies.timeouts", agora, Agora::getReplyTimeouts, null);
+		counter(registry, "agora.compression.frames", agora, Agora::getCompressedFrames, null);
+		counter(registry, "agora.compression.saved", agora, Agora::getCompressionBytesSaved, "bytes");
+		counter(registry, "agora.unknown.keywords", agora, Agora::getUnknownKeywordDrops, null);
+		counter(registry, "agora.duplicates.suppressed", agora, Agora::getDuplicatesSuppressed, null);
+		counter(registry, "agora.inbound.stalls", agora, Agora::getInboundStalls, null);
+		counter(registry, "agora.cluster.ejections", agora, Agora::getEjections, null);
+		counter(registry, "agora.cluster.failovers", agora, Agora::getFailedOver, null);
+
+		latency(registry, "agora.ack.latency", agora, Agora::getAckLatency);
+		latency(registry, "agora.heartbeat.rtt", agora, Agora::getHeartbeatRtt);
+		for (PrioritiesEnum priority : PrioritiesEnum.values()) {
+			latency(registry, "agora.queue.delay", agora, x -> x.getQueueingDelay(priority),
+					"priority", priority.name().toLowerCase(Locale.ROOT));
+		}
+
+		for (Map.Entry<String, AgoraDispatcher> entry : agoraDistributionHandler.getDispatchers().entrySet()) {
+			String[] tags = { "keyword", entry.getKey() };
+			AgoraDispatcher dispatcher = entry.getValue();
+			gauge(registry, "agora.kripteia.queued", dispatcher, AgoraDispatcher::getQueueDepth, tags);
+			gauge(registry, "agora.kripteia.active", dispatcher, AgoraDispatcher::getActive, tags);
+			counter(registry, "agora.kripteia.completed", dispatcher, AgoraDispatcher::getCompleted, null, tags);
+			counter(registry, "agora.kripteia.failed", dispatcher, AgoraDispatcher::getFailed, null, tags);
+			counter(registry, "agora.kripteia.rejected", dispatcher, AgoraDispatcher::getRejected, null, tags);
+			latency(registry, "agora.kripteia.latency", dispatcher, AgoraDispatcher::getLatency, tags);
+		}
+	}
+
+	private static <T> void gauge(MeterRegistry registry, String name, T source, ToDoubleFunction<T> value,
+			String... tags) {
+		Gauge.builder(name, source, value).tags(tags).register(registry);
+	}
+
+	private static <T> void counter(MeterRegistry registry, String name, T source, ToLongFunction<T> value,
+			String unit, String... tags) {
+		FunctionCounter.builder(name, source, x -> value.applyAsLong(x)).baseUnit(unit).tags(tags).register(registry);
+	}
+
+	private static <T> void latency(MeterRegistry registry, String name, T source,
+			Function<T, AgoraHistogram> histogram, String... tags) {
+		for (double quantile : QUANTILES) {
+			TimeGauge.builder(name, source, TimeUnit.MICROSECONDS,
+					x -> histogram.apply(x).getValueAtPercentile(quantile * 100))
+					.tags(tags)
+					.tag("quantile", String.valueOf(quantile))
+					.register(registry);
+		}
+		TimeGauge.builder(name + ".max", source, TimeUnit.MICROSECONDS, x -> histogram.apply(x).getMax())
+				.tags(tags)
+				.register(registry);
+	}
+
+}
@@ -0,0 +1,204 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+import filippos.bagordakis.agora.agora.Agora;
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+
+public class AgoraMetrics implements AgoraMXBean {
+
+	private final Agora agora;
+
+	public AgoraMetrics(Agora agora) {
+		this.agora = agora;
+	}
+
+	@Override
+	public int getLaneCount() {
+		return agora.getLaneCount();
+	}
+
+	@Override
+	public int getServerCount() {
+		return agora.getServerCount();
+	}
+
+	@Override
+	public int getHealthyServers() {
+		return agora.getHealthyServers();
+	}
+
+	@Override
+	public long getEjections() {
+		return agora.getEjections();
+	}
+
+	@Override
+	public long getFailedOver() {
+		return agora.getFailedOver();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return agora.getQueueDepth();
+	}
+
+	@Override
+	public long getQueueRejections() {
+		return agora.getQueueRejections();
+	}
+
+	@Override
+	public long getQueueDrops() {
+		return agora.getQueueDrops();
+	}
+
+	@Override
+	public long getQueueSpills() {
+		return agora.getQueueSpills();
+	}
+
+	@Override
+	public long getQueueingDelayHighP99() {
+		return agora.getQueueingDelay(PrioritiesEnum.HIGH).getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getQueueingDelayNormalP99() {
+		return agora.getQueueingDelay(PrioritiesEnum.NORMAL).getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getQueueingDelayLowP99() {
+		return agora.getQueueingDelay(PrioritiesEnum.LOW).getValueAtPercentile(99);
+	}
+
+	@Override
+	public int getOutboxPending() {
+		return agora.getOutboxPending();
+	}
+
+	@Override
+	public long getFramesSent() {
+		return agora.getFramesSent();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return agora.getBytesSent();
+	}
+
+	@Override
+	public long getFramesReceived() {
+		return agora.getFramesReceived();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return agora.getBytesReceived();
+	}
+
+	@Override
+	public long getFlushes() {
+		return agora.getFlushes();
+	}
+
+	@Override
+	public int getInFlight() {
+		return agora.getInFlight();
+	}
+
+	@Override
+	public long getRetransmits() {
+		return agora.getRetransmits();
+	}
+
+	@Override
+	public long getDeadLetters() {
+		return agora.getDeadLetters();
+	}
+
+	@Override
+	public long getAckLatencyP50() {
+		return agora.getAckLatency().getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getAckLatencyP99() {
+		return agora.getAckLatency().getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getAckLatencyMax() {
+		return agora.getAckLatency().getMax();
+	}
+
+	@Override
+	public long getHeartbeatRttP50() {
+		return agora.getHeartbeatRtt().getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getHeartbeatRttP99() {
+		return agora.getHeartbeatRtt().getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getSuspicions() {
+		return agora.getSuspicions();
+	}
+
+	@Override
+	public long getSessionResumptions() {
+		return agora.getSessionResumptions();
+	}
+
+	@Override
+	public long getSessionReplays() {
+		return agora.getSessionReplays();
+	}
+
+	@Override
+	public int getInboundInFlight() {
+		return agora.getInboundInFlight();
+	}
+
+	@Override
+	public int getInboundCredits() {
+		return agora.getInboundCredits();
+	}
+
+	@Override
+	public long getInboundStalls() {
+		return agora.getInboundStalls();
+	}
+
+	@Override
+	public int getPendingReplies() {
+		return agora.getPendingReplies();
+	}
+
+	@Override
+	public long getReplyTimeouts() {
+		return agora.getReplyTimeouts();
+	}
+
+	@Override
+	public long getCompressedFrames() {
+		return agora.getCompressedFrames();
+	}
+
+	@Override
+	public long getCompressionBytesSaved() {
+		return agora.getCompressionBytesSaved();
+	}
+
+	@Override
+	public long getUnknownKeywordDrops() {
+		return agora.getUnknownKeywordDrops();
+	}
+
+	@Override
+	public long getDuplicatesSuppressed() {
+		return agora.getDuplicatesSuppressed();
+	}
+
+}
@@ -0,0 +1,445 @@
+package filippos.bagordakis.agora.agora.outbox;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.codec.AgoraFrameBuffer;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Append only journal of requests that must survive a restart until they are
+ * acknowledged. Records are written into memory mapped segment files:
+ *
+ * <pre>
+ * byte   record type, 0 marks the end of the written part of a segment
+ * int    payload length
+ * long   id most significant bits
+ * long   id least significant bits
+ * ...    payload, the request in the binary wire format
+ * </pre>
+ *
+ * Appends wait for a shared fsync that a background thread issues for all
+ * appends that arrived since the previous one. Segments are deleted from the
+ * oldest end once all their requests are complete, a completed segment with
+ * live ones before it still holds their completions. Sparse segments are
+ * compacted into the current segment whenever a new segment is started.
+ */
+public class AgoraOutbox implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraOutbox.class);
+
+	private static final byte APPEND = 1;
+	private static final byte COMPLETE = 2;
+	private static final int RECORD_HEADER = 1 + Integer.BYTES + 2 * Long.BYTES;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final double COMPACTION_RATIO = 0.25;
+	private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long syncIntervalNanos;
+
+	private final BinaryAgoraCodec codec = new BinaryAgoraCodec();
+	private final AgoraFrameBuffer frame = new AgoraFrameBuffer();
+
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	private final LinkedHashMap<UUID, Entry> pending = new LinkedHashMap<>();
+	private Segment current;
+	private Segment syncing;
+	private long nextSegment;
+
+	private long written;
+	private long synced;
+	private volatile boolean open;
+	private Thread syncer;
+
+	public AgoraOutbox(Path directory, int segmentSize, long syncIntervalMillis) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+	}
+
+	/**
+	 * Opens the journal and returns every request that was appended but never
+	 * completed, in append order.
+	 */
+	public synchronized List<RequestDTO> open() throws IOException {
+		Files.createDirectories(directory);
+
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(files::add);
+		}
+		files.sort(null);
+
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+			Segment segment = Segment.map(file, sequence, (int) Files.size(file));
+			segments.put(sequence, segment);
+			scan(segment);
+			nextSegment = Math.max(nextSegment, sequence + 1);
+		}
+
+		reclaim();
+
+		List<RequestDTO> replay = new ArrayList<>(pending.size());
+		for (Entry entry : pending.values()) {
+			BaseDTO dto = codec.decode(entry.segment.buffer.slice(entry.offset, entry.length));
+			if (dto instanceof RequestDTO requestDTO) {
+				replay.add(requestDTO);
+			}
+		}
+
+		current = newSegment(segmentSize);
+		open = true;
+		syncer = new Thread(this::sync, "agora-outbox-sync");
+		syncer.setDaemon(true);
+		syncer.start();
+
+		if (!replay.isEmpty()) {
+			log.info("Replaying {} unacknowledged request(s) from {}", replay.size(), directory);
+		}
+		return replay;
+	}
+
+	private void scan(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position + RECORD_HEADER <= buffer.capacity()) {
+			byte type = buffer.get(position);
+			if (type != APPEND && type != COMPLETE) {
+				break;
+			}
+			int length = buffer.getInt(position + 1);
+			if (length < 0 || position + RECORD_HEADER + length > buffer.capacity()) {
+				log.warn("Truncated record in {} at {}", segment.path, position);
+				break;
+			}
+			UUID id = new UUID(buffer.getLong(position + 5), buffer.getLong(position + 13));
+
+			if (type == APPEND) {
+				// A compacted copy keeps the place of the original in the replay
+				Entry previous = pending.put(id, new Entry(segment, position + RECORD_HEADER, length));
+				if (previous != null) {
+					previous.segment.live--;
+				}
+				segment.live++;
+				segment.appended++;
+			} else {
+				Entry entry = pending.remove(id);
+				if (entry != null) {
+					entry.segment.live--;
+				}
+			}
+			position += RECORD_HEADER + length;
+		}
+		segment.position = position;
+	}
+
+	/**
+	 * Journals the request and returns once it has been forced to disk.
+	 */
+	public void append(RequestDTO dto) throws IOException {
+		long ticket;
+		synchronized (this) {
+			if (!open) {
+				throw new IOException("Outbox " + directory + " is not open");
+			}
+			frame.reset();
+			codec.encode(dto, frame.data());
+			Entry entry = write(APPEND, dto.getId(), frame.array(), 0, frame.size());
+			Entry previous = pending.put(dto.getId(), entry);
+			if (previous != null) {
+				previous.segment.live--;
+			}
+			ticket = ++written;
+			notifyAll();
+		}
+		awaitSynced(ticket);
+	}
+
+	/**
+	 * Marks the requests as acknowledged in a single pass. Unknown ids are
+	 * ignored.
+	 */
+	public synchronized void complete(Iterable<UUID> ids) {
+		for (UUID id : ids) {
+			complete(id);
+		}
+	}
+
+	/**
+	 * Marks the request as acknowledged. Unknown ids are ignored.
+	 */
+	public synchronized void complete(UUID id) {
+		if (!open) {
+			return;
+		}
+		Entry entry = pending.remove(id);
+		if (entry == null) {
+			return;
+		}
+		try {
+			write(COMPLETE, id, null, 0, 0);
+		} catch (IOException e) {
+			log.error("Failed to journal completion of {} : {}", id, e.getMessage());
+		}
+		entry.segment.live--;
+		if (entry.segment.live == 0) {
+			reclaim();
+		}
+	}
+
+	public synchronized int getPending() {
+		return pending.size();
+	}
+
+	public synchronized int getSegments() {
+		return segments.size();
+	}
+
+	private Entry write(byte type, UUID id, byte[] payload, int offset, int length) throws IOException {
+		int size = RECORD_HEADER + length;
+		if (current.buffer.capacity() - current.position < size + 1) {
+			roll(size + 1);
+		}
+
+		MappedByteBuffer buffer = current.buffer;
+		int position = current.position;
+		buffer.putInt(position + 1, length);
+		buffer.putLong(position + 5, id.getMostSignificantBits());
+		buffer.putLong(position + 13, id.getLeastSignificantBits());
+		if (length > 0) {
+			buffer.put(position + RECORD_HEADER, payload, offset, length);
+		}
+		// The type goes in last so a torn record reads as the end of the segment
+		buffer.put(position, type);
+		current.position = position + size;
+
+		if (type == APPEND) {
+			current.live++;
+			current.appended++;
+		}
+		return new Entry(current, position + RECORD_HEADER, length);
+	}
+
+	private void roll(int required) throws IOException {
+		current.buffer.force();
+		current = newSegment(Math.max(segmentSize, required));
+		compact();
+		reclaim();
+	}
+
+	/**
+	 * Moves the live requests of mostly completed segments into the current one
+	 * so the old files can be deleted.
+	 */
+	private void compact() throws IOException {
+		List<Segment> sparse = new ArrayList<>();
+		for (Segment segment : segments.values()) {
+			if (segment != current && segment.live > 0 && segment.live < segment.appended * COMPACTION_RATIO) {
+				sparse.add(segment);
+			}
+		}
+		if (sparse.isEmpty()) {
+			return;
+		}
+
+		for (Map.Entry<UUID, Entry> pendingEntry : pending.entrySet()) {
+			Entry entry = pendingEntry.getValue();
+			if (!sparse.contains(entry.segment)) {
+				continue;
+			}
+			if (current.buffer.capacity() - current.position < RECORD_HEADER + entry.length + 1) {
+				break;
+			}
+			byte[] payload = new byte[entry.length];
+			entry.segment.buffer.get(entry.offset, payload);
+			entry.segment.live--;
+			pendingEntry.setValue(write(APPEND, pendingEntry.getKey(), payload, 0, payload.length));
+		}
+		current.buffer.force();
+	}
+
+	private Segment newSegment(int size) throws IOException {
+		long sequence = nextSegment++;
+		Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+		Segment segment = Segment.map(path, sequence, size);
+		segments.put(sequence, segment);
+		return segment;
+	}
+
+	/**
+	 * Deletes completed segments from the oldest end up to the first one that
+	 * still has live requests.
+	 */
+	private void reclaim() {
+		Map.Entry<Long, Segment> oldest;
+		while ((oldest = segments.firstEntry()) != null && oldest.getValue() != current
+				&& oldest.getValue().live == 0) {
+			delete(oldest.getValue());
+		}
+	}
+
+	private void delete(Segment segment) {
+		segments.remove(segment.sequence);
+		segment.deleted = true;
+		// The syncer unmaps it once its force returns
+		if (segment != syncing) {
+			unmap(segment.buffer);
+		}
+		try {
+			Files.deleteIfExists(segment.path);
+		} catch (IOException e) {
+			log.error("Failed to delete outbox segment {} : {}", segment.path, e.getMessage());
+		}
+	}
+
+	/**
+	 * Releases the mapping right away instead of when the buffer is collected,
+	 * until then the file keeps its disk space. Nothing may touch the buffer
+	 * afterwards.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		if (INVOKE_CLEANER == null) {
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+		} catch (Throwable e) {
+			log.debug("Failed to unmap outbox segment : {}", e.getMessage());
+		}
+	}
+
+	private static MethodHandle invokeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			return MethodHandles.lookup()
+					.findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+					.bindTo(theUnsafe.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Outbox segments are unmapped by the garbage collector : {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private synchronized void awaitSynced(long ticket) throws IOException {
+		while (synced < ticket) {
+			if (!open) {
+				throw new IOException("Outbox " + directory + " closed before sync");
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for outbox sync", e);
+			}
+		}
+	}
+
+	private void sync() {
+		while (open) {
+			long target;
+			Segment segment;
+			synchronized (this) {
+				while (open && written == synced) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				target = written;
+				segment = current;
+				syncing = segment;
+			}
+
+			segment.buffer.force();
+
+			synchronized (this) {
+				syncing = null;
+				if (segment.deleted) {
+					unmap(segment.buffer);
+				}
+				synced = target;
+				notifyAll();
+			}
+			if (syncIntervalNanos > 0) {
+				// Let more appends pile up so the next force covers them all
+				LockSupport.parkNanos(this, syncIntervalNanos);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!open) {
+			return;
+		}
+		open = false;
+		current.buffer.force();
+		synced = written;
+		notifyAll();
+		if (syncer != null) {
+			syncer.interrupt();
+		}
+	}
+
+	private record Entry(Segment segment, int offset, int length) {
+
+	}
+
+	private static class Segment {
+
+		private final long sequence;
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		private int position;
+		private int live;
+		private int appended;
+		private boolean deleted;
+
+		private Segment(long sequence, Path path, MappedByteBuffer buffer) {
+			this.sequence = sequence;
+			this.path = path;
+			this.buffer = buffer;
+		}
+
+		private static Segment map(Path path, long sequence, int size) throws IOException {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+			}
+		}
+
+	}
+
+}
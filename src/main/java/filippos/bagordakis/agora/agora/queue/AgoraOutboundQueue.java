@@ -0,0 +1,232 @@
+package filippos.bagordakis.agora.agora.queue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.enums.OverflowPoliciesEnum;
+import filippos.bagordakis.agora.agora.exception.AgoraQueueFullException;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * Bounded array ring for outbound frames. Slots carry a sequence number so
+ * producers claim them with a single CAS and nothing is allocated per element.
+ * Polling is CAS based as well, which lets {@link OverflowPoliciesEnum#DROP_OLDEST}
+ * evict from producer threads while the writer keeps draining. Every slot also
+ * holds the time its frame was queued, so the writer can tell how long it waited.
+ * <p>
+ * DROP_OLDEST may evict any frame in the ring, durable requests, requests
+ * awaiting a reply and replies alike. None of them was sent yet, retransmits
+ * skip this queue, and every evicted one is passed to the drop listener so
+ * the caller can settle it.
+ */
+public class AgoraOutboundQueue {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraOutboundQueue.class);
+
+	private static final long BLOCK_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final AtomicReferenceArray<BaseDTO> buffer;
+	private final AtomicLongArray sequences;
+	private final AtomicLongArray queuedAt;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	private final OverflowPoliciesEnum policy;
+	private final long blockTimeoutNanos;
+	private final AgoraSpillFile spillFile;
+	private final Consumer<BaseDTO> dropListener;
+
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder spilled = new LongAdder();
+	private final AgoraHistogram delay = new AgoraHistogram();
+
+	public AgoraOutboundQueue(int capacity, OverflowPoliciesEnum policy, long blockTimeoutMillis, Path spillDirectory) {
+		this(capacity, policy, blockTimeoutMillis, spillDirectory, dto -> {
+		});
+	}
+
+	public AgoraOutboundQueue(int capacity, OverflowPoliciesEnum policy, long blockTimeoutMillis, Path spillDirectory,
+			Consumer<BaseDTO> dropListener) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("Queue capacity must be at least 2 but was " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.buffer = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		this.queuedAt = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.mask = size - 1;
+		this.policy = policy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+		this.dropListener = dropListener;
+		try {
+			this.spillFile = policy == OverflowPoliciesEnum.SPILL ? new AgoraSpillFile(spillDirectory) : null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Enqueues the frame, applying the overflow policy when the ring is full.
+	 *
+	 * @throws AgoraQueueFullException when the frame is rejected
+	 */
+	public void add(BaseDTO dto) {
+		if ((spillFile == null || spillFile.isEmpty()) && offer(dto)) {
+			return;
+		}
+
+		switch (policy) {
+		case BLOCK -> {
+			long deadline = System.nanoTime() + blockTimeoutNanos;
+			while (!offer(dto)) {
+				if (System.nanoTime() - deadline >= 0) {
+					reject(dto);
+				}
+				LockSupport.parkNanos(this, BLOCK_BACKOFF_NANOS);
+			}
+		}
+		case REJECT -> reject(dto);
+		case DROP_OLDEST -> {
+			while (!offer(dto)) {
+				BaseDTO oldest = pollRing(false);
+				if (oldest != null) {
+					dropped.increment();
+					log.debug("Dropped [{}] to make room", oldest);
+					dropListener.accept(oldest);
+				}
+			}
+		}
+		case SPILL -> {
+			try {
+				spillFile.append(dto);
+				spilled.increment();
+			} catch (IOException e) {
+				log.error("Failed to spill [{}] : {}", dto, e.getMessage());
+				reject(dto);
+			}
+		}
+		}
+	}
+
+	private void reject(BaseDTO dto) {
+		rejected.increment();
+		throw new AgoraQueueFullException("Outbound queue is full, rejected " + dto);
+	}
+
+	/**
+	 * Enqueues without applying any policy, returning false when the ring is full.
+	 */
+	public boolean offer(BaseDTO dto) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					buffer.lazySet(index, dto);
+					queuedAt.lazySet(index, System.nanoTime());
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	public BaseDTO poll() {
+		BaseDTO dto = pollRing(true);
+		if (dto == null && spillFile != null && !spillFile.isEmpty()) {
+			try {
+				dto = spillFile.poll();
+			} catch (IOException e) {
+				log.error("Failed to read spilled frame : {}", e.getMessage());
+			}
+		}
+		return dto;
+	}
+
+	private BaseDTO pollRing(boolean timed) {
+		long position = head.get();
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					BaseDTO dto = buffer.get(index);
+					long queued = queuedAt.get(index);
+					buffer.lazySet(index, null);
+					sequences.set(index, position + mask + 1);
+					if (timed) {
+						delay.recordNanos(System.nanoTime() - queued);
+					}
+					return dto;
+				}
+				position = head.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	public int size() {
+		long size = tail.get() - head.get();
+		if (spillFile != null) {
+			size += spillFile.size();
+		}
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size));
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public long getSpilled() {
+		return spilled.sum();
+	}
+
+	/**
+	 * Time frames waited in the ring before the writer took them, frames read
+	 * back from the spill file are not timed.
+	 */
+	public AgoraHistogram getDelay() {
+		return delay;
+	}
+
+	public void close() {
+		if (spillFile != null) {
+			spillFile.close();
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package filippos.bagordakis.agora.agora.queue;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * One {@link AgoraOutboundQueue} per priority drained by weighted round robin.
+ * In every round a priority may send up to its weight in frames, higher ones
+ * first, so urgent frames overtake a backlog while lower priorities still get
+ * their share and cannot starve. Rings are created the first time their
+ * priority is used, an application that never sets one only pays for NORMAL.
+ * Each ring has the full capacity, so a lane holds up to that many frames per
+ * priority in use rather than in total.
+ * <p>
+ * {@link #poll()} keeps the round in plain fields and must only be called by
+ * the writer of the lane.
+ */
+public class AgoraPriorityQueue {
+
+	private static final PrioritiesEnum[] PRIORITIES = PrioritiesEnum.values();
+
+	private final Supplier<AgoraOutboundQueue> factory;
+	private final AtomicReferenceArray<AgoraOutboundQueue> queues = new AtomicReferenceArray<>(PRIORITIES.length);
+	private final int[] weights;
+	private final int[] credits;
+
+	public AgoraPriorityQueue(int[] weights, Supplier<AgoraOutboundQueue> factory) {
+		if (weights.length != PRIORITIES.length) {
+			throw new IllegalArgumentException(
+					"Expected " + PRIORITIES.length + " priority weights but got " + weights.length);
+		}
+		for (int weight : weights) {
+			if (weight < 1) {
+				throw new IllegalArgumentException("Priority weights must be at least 1 but got " + weight);
+			}
+		}
+		this.factory = factory;
+		this.weights = weights.clone();
+		this.credits = weights.clone();
+		queues.set(PrioritiesEnum.NORMAL.ordinal(), factory.get());
+	}
+
+	/**
+	 * Enqueues the frame with the overflow policy of the ring of its priority.
+	 *
+	 * @throws filippos.bagordakis.agora.agora.exception.AgoraQueueFullException when the frame is rejected
+	 */
+	public void add(BaseDTO dto, PrioritiesEnum priority) {
+		queue(priority).add(dto);
+	}
+
+	private AgoraOutboundQueue queue(PrioritiesEnum priority) {
+		AgoraOutboundQueue queue = queues.get(priority.ordinal());
+		if (queue == null) {
+			synchronized (this) {
+				queue = queues.get(priority.ordinal());
+				if (queue == null) {
+					queue = factory.get();
+					queues.set(priority.ordinal(), queue);
+				}
+			}
+		}
+		return queue;
+	}
+
+	public BaseDTO poll() {
+		// The second pass starts a new round once nobody with credit has anything
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < credits.length; i++) {
+				if (credits[i] == 0) {
+					continue;
+				}
+				AgoraOutboundQueue queue = queues.get(i);
+				BaseDTO dto = queue != null ? queue.poll() : null;
+				if (dto != null) {
+					credits[i]--;
+					return dto;
+				}
+			}
+			System.arraycopy(weights, 0, credits, 0, credits.length);
+		}
+		return null;
+	}
+
+	/**
+	 * Moves everything queued into the collection, highest priority first. Safe
+	 * to call next to the writer, each frame ends up with one of them.
+	 */
+	public void drainTo(Collection<? super BaseDTO> drained) {
+		for (int i = 0; i < queues.length(); i++) {
+			AgoraOutboundQueue queue = queues.get(i);
+			BaseDTO dto;
+			while (queue != null && (dto = queue.poll()) != null) {
+				drained.add(dto);
+			}
+		}
+	}
+
+	public int size() {
+		long size = 0;
+		for (int i = 0; i < queues.length(); i++) {
+			AgoraOutboundQueue queue = queues.get(i);
+			if (queue != null) {
+				size += queue.size();
+			}
+		}
+		return (int) Math.min(Integer.MAX_VALUE, size);
+	}
+
+	public long getRejected() {
+		long total = 0;
+		for (int i = 0; i < queues.length(); i++) {
+			AgoraOutboundQueue queue = queues.get(i);
+			if (queue != null) {
+				total += queue.getRejected();
+			}
+		}
+		return total;
+	}
+
+	public long getDropped() {
+		long total = 0;
+		for (int i = 0; i < queues.length(); i++) {
+			AgoraOutboundQueue queue = queues.get(i);
+			if (queue != null) {
+				total += queue.getDropped();
+			}
+		}
+		return total;
+	}
+
+	public long getSpilled() {
+		long total = 0;
+		for (int i = 0; i < queues.length(); i++) {
+			AgoraOutboundQueue queue = queues.get(i);
+			if (queue != null) {
+				total += queue.getSpilled();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Queueing delay of the priority, empty if it was never used.
+	 */
+	public AgoraHistogram getDelay(PrioritiesEnum priority) {
+		AgoraOutboundQueue queue = queues.get(priority.ordinal());
+		return queue != null ? queue.getDelay() : new AgoraHistogram();
+	}
+
+	public synchronized void close() {
+		for (int i = 0; i < queues.length(); i++) {
+			AgoraOutboundQueue queue = queues.get(i);
+			if (queue != null) {
+				queue.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package filippos.bagordakis.agora.agora.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.codec.AgoraFrameBuffer;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * FIFO overflow of an {@link AgoraOutboundQueue} on disk. Frames are appended
+ * in the binary wire format and read back in order; the file is truncated
+ * whenever the reader catches up with the writer.
+ */
+class AgoraSpillFile {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraSpillFile.class);
+
+	private final Path path;
+	private final FileChannel channel;
+	private final BinaryAgoraCodec codec = new BinaryAgoraCodec();
+	private final AgoraFrameBuffer frame = new AgoraFrameBuffer();
+	private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+
+	private long readPosition;
+	private long writePosition;
+	private volatile int count;
+
+	AgoraSpillFile(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		this.path = Files.createTempFile(directory, "agora-spill-", ".bin");
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	int size() {
+		return count;
+	}
+
+	synchronized void append(BaseDTO dto) throws IOException {
+		codec.encodeFrame(dto, frame);
+		ByteBuffer bytes = ByteBuffer.wrap(frame.array(), 0, frame.size());
+		while (bytes.hasRemaining()) {
+			writePosition += channel.write(bytes, writePosition);
+		}
+		count++;
+	}
+
+	synchronized BaseDTO poll() throws IOException {
+		while (count > 0) {
+			header.clear();
+			readFully(header);
+			int length = header.flip().getInt();
+			ByteBuffer body = ByteBuffer.allocate(length);
+			readFully(body);
+			count--;
+
+			if (count == 0) {
+				channel.truncate(0);
+				readPosition = 0;
+				writePosition = 0;
+			}
+
+			BaseDTO dto = codec.decode(body.flip());
+			if (dto != null) {
+				return dto;
+			}
+		}
+		return null;
+	}
+
+	private void readFully(ByteBuffer target) throws IOException {
+		while (target.hasRemaining()) {
+			int read = channel.read(target, readPosition);
+			if (read < 0) {
+				throw new IOException("Spill file " + path + " ended early");
+			}
+			readPosition += read;
+		}
+	}
+
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.error("Failed to close spill file {} : {}", path, e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+package filippos.bagordakis.agora.agora.reply;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.exception.AgoraReplyException;
+import filippos.bagordakis.agora.agora.retransmit.AgoraTimerWheel;
+import filippos.bagordakis.agora.agora.retransmit.AgoraTimerWheel.Timeout;
+
+/**
+ * Correlates responses with the requests waiting for them. Every pending
+ * request holds a future and a timeout on a timer wheel, and no more than
+ * {@code maxPending} may wait at once so a silent peer cannot pile up futures
+ * without bound.
+ */
+public class AgoraReplies {
+
+	private static final class Pending {
+
+		private final UUID id;
+		private final long timeoutMillis;
+		private final CompletableFuture<String> future = new CompletableFuture<>();
+		private volatile Timeout<Pending> timeout;
+
+		private Pending(UUID id, long timeoutMillis) {
+			this.id = id;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+	}
+
+	private final ConcurrentHashMap<UUID, Pending> pending = new ConcurrentHashMap<>();
+	private final AgoraTimerWheel<Pending> wheel;
+	private final int maxPending;
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder uncorrelated = new LongAdder();
+
+	public AgoraReplies(int maxPending, long tickMillis) {
+		this.maxPending = maxPending;
+		this.wheel = new AgoraTimerWheel<>(512, tickMillis, this::expired, "agora-reply-timeout");
+		this.wheel.start();
+	}
+
+	/**
+	 * Starts waiting for the reply to the request with the given id. Must be
+	 * called before the request is sent so a fast reply is not missed.
+	 */
+	public CompletableFuture<String> register(UUID id, long timeoutMillis) {
+		if (size.incrementAndGet() > maxPending) {
+			size.decrementAndGet();
+			rejected.increment();
+			return CompletableFuture.failedFuture(
+					new AgoraReplyException("More than " + maxPending + " requests are waiting for a reply"));
+		}
+
+		Pending entry = new Pending(id, timeoutMillis);
+		pending.put(id, entry);
+		entry.timeout = wheel.schedule(entry, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+		return entry.future;
+	}
+
+	/**
+	 * Completes the request the response answers. Returns false if nothing was
+	 * waiting for it, because it timed out or was answered already.
+	 */
+	public boolean complete(ResponseDTO responseDTO) {
+		Pending entry = remove(responseDTO.getCorrelationId());
+		if (entry == null) {
+			uncorrelated.increment();
+			return false;
+		}
+
+		completed.increment();
+		if (responseDTO.getError() != null) {
+			entry.future.completeExceptionally(new AgoraReplyException(responseDTO.getError()));
+		} else {
+			entry.future.complete(responseDTO.getJsonData());
+		}
+		return true;
+	}
+
+	public void fail(UUID id, Throwable cause) {
+		Pending entry = remove(id);
+		if (entry != null) {
+			entry.future.completeExceptionally(cause);
+		}
+	}
+
+	private Pending remove(UUID id) {
+		Pending entry = pending.remove(id);
+		if (entry != null) {
+			size.decrementAndGet();
+			Timeout<Pending> timeout = entry.timeout;
+			if (timeout != null) {
+				wheel.cancel(timeout);
+			}
+		}
+		return entry;
+	}
+
+	private void expired(Pending entry) {
+		if (pending.remove(entry.id, entry)) {
+			size.decrementAndGet();
+			timedOut.increment();
+			entry.future.completeExceptionally(
+					new TimeoutException("No reply to " + entry.id + " within " + entry.timeoutMillis + "ms"));
+		}
+	}
+
+	public void close() {
+		wheel.stop();
+		for (UUID id : pending.keySet()) {
+			fail(id, new AgoraReplyException("Agora was closed before the reply arrived"));
+		}
+	}
+
+	public int getPending() {
+		return size.get();
+	}
+
+	public long getCompleted() {
+		return completed.sum();
+	}
+
+	public long getTimedOut() {
+		return timedOut.sum();
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	public long getUncorrelated() {
+		return uncorrelated.sum();
+	}
+
+}
@@ -0,0 +1,5 @@
+package filippos.bagordakis.agora.agora.retransmit;
+
+public record AgoraRetransmitSettings(long initialTimeout, long minTimeout, long maxTimeout, int maxRetries) {
+
+}
@@ -0,0 +1,245 @@
+package filippos.bagordakis.agora.agora.retransmit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import filippos.bagordakis.agora.agora.metrics.AgoraHistogram;
+import filippos.bagordakis.agora.agora.retransmit.AgoraTimerWheel.Timeout;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Tracks frames waiting for an acknowledgment on one connection. The
+ * retransmission timeout adapts to the measured ack round trip the way TCP
+ * does (RFC 6298): a smoothed RTT plus four times its variance, sampled only
+ * from frames that were never retransmitted. An expiry doubles the timeout, at
+ * most once per timeout period so frames expiring together count as a single
+ * loss, and requests that exhaust their retry budget are handed to the dead
+ * letter callback.
+ */
+public class AgoraRetransmitter {
+
+	public static final class Entry {
+
+		private final BaseDTO dto;
+		private final AgoraRetransmitter owner;
+		private long sentAt;
+		private int attempts;
+		private Timeout<Entry> timeout;
+
+		private Entry(BaseDTO dto, AgoraRetransmitter owner) {
+			this.dto = dto;
+			this.owner = owner;
+		}
+
+		public void expire() {
+			owner.expired(this);
+		}
+
+	}
+
+	private final AgoraTimerWheel<Entry> wheel;
+	private final AgoraRetransmitSettings settings;
+	private final Consumer<BaseDTO> retransmit;
+	private final Consumer<RequestDTO> deadLetter;
+
+	private final ConcurrentHashMap<UUID, Entry> inFlight = new ConcurrentHashMap<>();
+
+	private final long minTimeout;
+	private final long maxTimeout;
+	private final AgoraHistogram ackLatency = new AgoraHistogram();
+	private long smoothedRtt = -1;
+	private long rttVariance;
+	private volatile long timeout;
+	private boolean backedOff;
+	private long backedOffAt;
+	private volatile long lastProgress = System.nanoTime();
+
+	private final LongAdder retransmits = new LongAdder();
+	private final LongAdder deadLetters = new LongAdder();
+
+	public AgoraRetransmitter(AgoraTimerWheel<Entry> wheel, AgoraRetransmitSettings settings,
+			Consumer<BaseDTO> retransmit, Consumer<RequestDTO> deadLetter) {
+		this.wheel = wheel;
+		this.settings = settings;
+		this.retransmit = retransmit;
+		this.deadLetter = deadLetter;
+		this.minTimeout = TimeUnit.MILLISECONDS.toNanos(settings.minTimeout());
+		this.maxTimeout = TimeUnit.MILLISECONDS.toNanos(settings.maxTimeout());
+		this.timeout = TimeUnit.MILLISECONDS.toNanos(settings.initialTimeout());
+	}
+
+	/**
+	 * Arms the retransmission timer of a frame that is about to be written.
+	 */
+	public void sending(BaseDTO dto) {
+		Entry entry = inFlight.get(dto.getId());
+		if (entry == null) {
+			entry = new Entry(dto, this);
+			Entry existing = inFlight.putIfAbsent(dto.getId(), entry);
+			if (existing != null) {
+				entry = existing;
+			} else if (dto instanceof RequestDTO && inFlight.size() == 1) {
+				// Nothing was owed before, the wait starts now. A greeting sent again
+				// after its timeout does not restart it
+				lastProgress = System.nanoTime();
+			}
+		}
+
+		synchronized (entry) {
+			if (entry.timeout != null) {
+				wheel.cancel(entry.timeout);
+			}
+			entry.sentAt = System.nanoTime();
+			entry.timeout = wheel.schedule(entry, timeout);
+		}
+	}
+
+	/**
+	 * Stops tracking the frame and returns it, or null if it was not in flight.
+	 */
+	public BaseDTO acknowledge(UUID id) {
+		Entry entry = inFlight.remove(id);
+		if (entry == null) {
+			return null;
+		}
+		lastProgress = System.nanoTime();
+		long rtt = -1;
+		synchronized (entry) {
+			if (entry.timeout != null) {
+				wheel.cancel(entry.timeout);
+				entry.timeout = null;
+			}
+			if (entry.attempts == 0) {
+				rtt = System.nanoTime() - entry.sentAt;
+			}
+		}
+		if (rtt >= 0) {
+			ackLatency.recordNanos(rtt);
+			sample(rtt);
+		}
+		return entry.dto;
+	}
+
+	/**
+	 * Stops tracking every request and returns them, so they can be sent over
+	 * another connection. Other frames stay tracked.
+	 */
+	public List<RequestDTO> drain() {
+		List<RequestDTO> drained = new ArrayList<>();
+		for (Entry entry : inFlight.values()) {
+			if (entry.dto instanceof RequestDTO requestDTO && inFlight.remove(requestDTO.getId(), entry)) {
+				synchronized (entry) {
+					if (entry.timeout != null) {
+						wheel.cancel(entry.timeout);
+						entry.timeout = null;
+					}
+				}
+				drained.add(requestDTO);
+			}
+		}
+		return drained;
+	}
+
+	public boolean isPending(UUID id) {
+		return inFlight.containsKey(id);
+	}
+
+	private void expired(Entry entry) {
+		if (inFlight.get(entry.dto.getId()) != entry) {
+			return;
+		}
+		int attempts;
+		synchronized (entry) {
+			entry.timeout = null;
+			attempts = ++entry.attempts;
+		}
+
+		if (entry.dto instanceof RequestDTO requestDTO) {
+			if (attempts > settings.maxRetries()) {
+				inFlight.remove(entry.dto.getId(), entry);
+				deadLetters.increment();
+				deadLetter.accept(requestDTO);
+				return;
+			}
+		} else {
+			inFlight.remove(entry.dto.getId(), entry);
+		}
+		backOff();
+		retransmits.increment();
+		retransmit.accept(entry.dto);
+	}
+
+	/**
+	 * Samples are only taken from frames that were sent once, so a slow link
+	 * would never raise the estimate. Doubling the shared timeout keeps it up
+	 * until an unambiguous sample arrives, and as retransmits are armed with it
+	 * every retry of a frame waits twice as long as the one before (RFC 6298
+	 * 5.5).
+	 */
+	private synchronized void backOff() {
+		long now = System.nanoTime();
+		// Frames sent before the last doubling still expire on the old timeout
+		if (backedOff && now - backedOffAt < timeout) {
+			return;
+		}
+		backedOff = true;
+		backedOffAt = now;
+		timeout = Math.min(maxTimeout, timeout * 2);
+	}
+
+	private synchronized void sample(long rtt) {
+		if (smoothedRtt < 0) {
+			smoothedRtt = rtt;
+			rttVariance = rtt / 2;
+		} else {
+			rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rtt)) / 4;
+			smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+		}
+		timeout = Math.max(minTimeout, Math.min(maxTimeout, smoothedRtt + 4 * rttVariance));
+	}
+
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * How long frames have been owed an acknowledgment without any arriving, 0
+	 * when nothing is in flight.
+	 */
+	public long getAwaitingMillis() {
+		if (inFlight.isEmpty()) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastProgress);
+	}
+
+	public long getRetransmissionTimeoutMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(timeout);
+	}
+
+	/**
+	 * Time from sending to acknowledgment, only for frames sent once.
+	 */
+	public AgoraHistogram getAckLatency() {
+		return ackLatency;
+	}
+
+	public synchronized long getSmoothedRttMicros() {
+		return smoothedRtt < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(smoothedRtt);
+	}
+
+	public long getRetransmits() {
+		return retransmits.sum();
+	}
+
+	public long getDeadLetters() {
+		return deadLetters.sum();
+	}
+
+}
@@ -0,0 +1,159 @@
+package filippos.bagordakis.agora.agora.retransmit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel. Every bucket holds a doubly linked list of timeouts, so
+ * scheduling and cancelling are O(1) no matter how many timeouts are pending.
+ * A single worker thread advances one bucket per tick and hands expired items
+ * to the callback outside the wheel lock.
+ */
+public class AgoraTimerWheel<T> implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraTimerWheel.class);
+
+	public static final class Timeout<T> {
+
+		private final T item;
+		private long rounds;
+		private int bucket = -1;
+		private Timeout<T> previous;
+		private Timeout<T> next;
+
+		private Timeout(T item) {
+			this.item = item;
+		}
+
+		public T item() {
+			return item;
+		}
+
+	}
+
+	private final Timeout<T>[] buckets;
+	private final int mask;
+	private final long tickNanos;
+	private final long startTime;
+	private final Consumer<T> expired;
+	private final Thread worker;
+
+	private long processedTick = -1;
+	private int pending;
+	private volatile boolean running;
+
+	@SuppressWarnings("unchecked")
+	public AgoraTimerWheel(int wheelSize, long tickMillis, Consumer<T> expired, String name) {
+		int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+		this.buckets = new Timeout[size];
+		this.mask = size - 1;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+		this.startTime = System.nanoTime();
+		this.expired = expired;
+		this.worker = new Thread(this, name);
+		this.worker.setDaemon(true);
+	}
+
+	public void start() {
+		running = true;
+		worker.start();
+	}
+
+	public void stop() {
+		running = false;
+		LockSupport.unpark(worker);
+	}
+
+	public synchronized Timeout<T> schedule(T item, long delayNanos) {
+		long target = (System.nanoTime() + delayNanos - startTime + tickNanos - 1) / tickNanos;
+		long first = processedTick + 1;
+		if (target < first) {
+			target = first;
+		}
+
+		Timeout<T> timeout = new Timeout<>(item);
+		timeout.rounds = (target - first) >> Integer.numberOfTrailingZeros(buckets.length);
+		timeout.bucket = (int) (target & mask);
+		timeout.next = buckets[timeout.bucket];
+		if (timeout.next != null) {
+			timeout.next.previous = timeout;
+		}
+		buckets[timeout.bucket] = timeout;
+		pending++;
+		return timeout;
+	}
+
+	/**
+	 * Cancels the timeout, returning false if it already expired or was cancelled.
+	 */
+	public synchronized boolean cancel(Timeout<T> timeout) {
+		if (timeout.bucket < 0) {
+			return false;
+		}
+		unlink(timeout);
+		return true;
+	}
+
+	public synchronized int getPending() {
+		return pending;
+	}
+
+	private void unlink(Timeout<T> timeout) {
+		if (timeout.previous != null) {
+			timeout.previous.next = timeout.next;
+		} else {
+			buckets[timeout.bucket] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.bucket = -1;
+		pending--;
+	}
+
+	@Override
+	public void run() {
+		List<T> due = new ArrayList<>();
+		while (running) {
+			long wait = startTime + (processedTick + 1) * tickNanos - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(this, wait);
+				continue;
+			}
+
+			synchronized (this) {
+				long tick = processedTick + 1;
+				Timeout<T> timeout = buckets[(int) (tick & mask)];
+				while (timeout != null) {
+					Timeout<T> next = timeout.next;
+					if (timeout.rounds <= 0) {
+						unlink(timeout);
+						due.add(timeout.item);
+					} else {
+						timeout.rounds--;
+					}
+					timeout = next;
+				}
+				processedTick = tick;
+			}
+
+			for (T item : due) {
+				try {
+					expired.accept(item);
+				} catch (RuntimeException e) {
+					log.error("Timer callback failed", e);
+				}
+			}
+			due.clear();
+		}
+	}
+
+}
@@ -0,0 +1,239 @@
+package filippos.bagordakis.agora.agora.session;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Resumable session of one connection, outliving reconnects. Once both sides
+ * agreed on it in their handshakes, every request and response is numbered in
+ * the order it was first sent and kept until acknowledged. The handshake of a
+ * reconnect names the session and the last number up to which everything
+ * from the peer was accepted. That acknowledges those frames at once, their
+ * acknowledgments may have been lost with the connection, and each side
+ * replays the rest in order instead of waiting for retransmission timeouts.
+ * <p>
+ * A frame the handler turned away leaves a gap, nothing past it counts as
+ * received until the peer retransmits it and it is taken.
+ */
+public class AgoraSession {
+
+	/**
+	 * Last received number a peer answers with when it had no state for the
+	 * session, everything unacknowledged is replayed.
+	 */
+	public static final long UNKNOWN = -1;
+
+	private static final int MAX_RECEIVED_AHEAD = 65536;
+
+	private record Numbered(long sequence, RequestDTO dto) {
+	}
+
+	private final UUID token;
+	private final boolean offered;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+	// Ordered only when resuming, sending and acknowledging stay one hash lookup each
+	private final ConcurrentHashMap<UUID, Numbered> unacknowledged = new ConcurrentHashMap<>();
+	private final AtomicLong lastReceived = new AtomicLong();
+	private final ConcurrentSkipListSet<Long> receivedAhead = new ConcurrentSkipListSet<>();
+	private long receiving;
+
+	private volatile boolean established;
+	private volatile boolean awaiting;
+
+	private final LongAdder resumptions = new LongAdder();
+	private final LongAdder replayed = new LongAdder();
+
+	public AgoraSession(UUID token, boolean offered) {
+		this.token = token;
+		this.offered = offered;
+	}
+
+	public static AgoraSession none() {
+		return new AgoraSession(null, false);
+	}
+
+	public UUID getToken() {
+		return token;
+	}
+
+	public boolean isOffered() {
+		return offered;
+	}
+
+	public boolean isEstablished() {
+		return established;
+	}
+
+	/**
+	 * True between connecting and the peer answering the handshake. Requests
+	 * wait meanwhile so none goes out unnumbered to a peer that would number it.
+	 */
+	public boolean isAwaiting() {
+		return awaiting;
+	}
+
+	public long getLastReceived() {
+		return lastReceived.get();
+	}
+
+	/**
+	 * A new connection starts unnumbered until the handshake is answered.
+	 */
+	public void connected() {
+		established = false;
+		awaiting = offered;
+	}
+
+	public void disconnected() {
+		established = false;
+		awaiting = false;
+	}
+
+	/**
+	 * Lets requests go out, numbered if the peer agreed on the session. Called
+	 * once the replay is queued, or when the peer acknowledged the greeting
+	 * without agreeing or never answered it.
+	 */
+	public void proceed() {
+		awaiting = false;
+	}
+
+	/**
+	 * The peer agreed on the session, having received up to
+	 * {@code peerLastReceived}. Returns the requests to replay, oldest first,
+	 * the caller queues them before it calls {@link #proceed()}.
+	 */
+	public List<RequestDTO> resume(long peerLastReceived) {
+		if (peerLastReceived == UNKNOWN) {
+			// A peer without our session numbers its frames from scratch
+			lastReceived.set(0);
+			receivedAhead.clear();
+			peerLastReceived = 0;
+		} else {
+			resumptions.increment();
+		}
+		List<RequestDTO> replay = new ArrayList<>();
+		for (Numbered numbered : sorted()) {
+			if (numbered.sequence() > peerLastReceived) {
+				replay.add(numbered.dto());
+			}
+		}
+		replayed.add(replay.size());
+		established = true;
+		return replay;
+	}
+
+	/**
+	 * Stops tracking what the peer has accepted up to {@code peerLastReceived}
+	 * and returns it, for the caller to treat as acknowledged.
+	 */
+	public List<RequestDTO> confirm(long peerLastReceived) {
+		List<RequestDTO> confirmed = new ArrayList<>();
+		if (peerLastReceived == UNKNOWN) {
+			return confirmed;
+		}
+		Iterator<Numbered> iterator = unacknowledged.values().iterator();
+		while (iterator.hasNext()) {
+			Numbered numbered = iterator.next();
+			if (numbered.sequence() <= peerLastReceived) {
+				iterator.remove();
+				confirmed.add(numbered.dto());
+			}
+		}
+		return confirmed;
+	}
+
+	private List<Numbered> sorted() {
+		List<Numbered> sorted = new ArrayList<>(unacknowledged.values());
+		sorted.sort(Comparator.comparingLong(Numbered::sequence));
+		return sorted;
+	}
+
+	/**
+	 * Takes over the numbering and unacknowledged frames of an earlier
+	 * connection of the same session, for the accepting side.
+	 */
+	public void takeOver(AgoraSession previous) {
+		nextSequence.set(previous.nextSequence.get());
+		lastReceived.set(previous.lastReceived.get());
+		receivedAhead.addAll(previous.receivedAhead);
+		unacknowledged.putAll(previous.unacknowledged);
+	}
+
+	/**
+	 * Numbers a request the first time it is sent, retransmissions keep their
+	 * number.
+	 */
+	public void sending(BaseDTO dto) {
+		if (established && dto instanceof RequestDTO requestDTO) {
+			unacknowledged.computeIfAbsent(dto.getId(),
+					id -> new Numbered(nextSequence.incrementAndGet(), requestDTO));
+		}
+	}
+
+	/**
+	 * Number to put on the wire, 0 for frames sent unnumbered.
+	 */
+	public long sequenceOf(BaseDTO dto) {
+		if (!established) {
+			return 0;
+		}
+		Numbered numbered = unacknowledged.get(dto.getId());
+		return numbered == null ? 0 : numbered.sequence();
+	}
+
+	/**
+	 * Number of the frame being decoded, 0 if it came unnumbered. The codec and
+	 * the handler run on the same reading thread, the handler calls
+	 * {@link #accepted()} if it took it.
+	 */
+	public void receiving(long sequence) {
+		receiving = sequence;
+	}
+
+	public void accepted() {
+		long sequence = receiving;
+		if (sequence == 0) {
+			return;
+		}
+		receiving = 0;
+		long last = lastReceived.get();
+		if (sequence == last + 1) {
+			last = sequence;
+			while (receivedAhead.remove(last + 1)) {
+				last++;
+			}
+			lastReceived.set(last);
+		} else if (sequence > last + 1 && receivedAhead.size() < MAX_RECEIVED_AHEAD) {
+			receivedAhead.add(sequence);
+		}
+	}
+
+	public void acknowledged(UUID id) {
+		unacknowledged.remove(id);
+	}
+
+	public int getUnacknowledged() {
+		return unacknowledged.size();
+	}
+
+	public long getResumptions() {
+		return resumptions.sum();
+	}
+
+	public long getReplayed() {
+		return replayed.sum();
+	}
+
+}
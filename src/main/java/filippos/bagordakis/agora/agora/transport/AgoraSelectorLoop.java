@@ -0,0 +1,138 @@
+package filippos.bagordakis.agora.agora.transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single I/O thread multiplexing every {@link NioAgoraTransport} of the JVM.
+ * Channel registration, interest changes and timers all run on this thread;
+ * other threads hand work over through {@link #execute(Runnable)}.
+ */
+public class AgoraSelectorLoop implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(AgoraSelectorLoop.class);
+
+	private static AgoraSelectorLoop shared;
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+	private final Thread thread;
+
+	private AgoraSelectorLoop() {
+		try {
+			this.selector = Selector.open();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.thread = new Thread(this, "agora-io");
+		this.thread.setDaemon(true);
+	}
+
+	public static synchronized AgoraSelectorLoop shared() {
+		if (shared == null) {
+			shared = new AgoraSelectorLoop();
+			shared.thread.start();
+		}
+		return shared;
+	}
+
+	Selector selector() {
+		return selector;
+	}
+
+	boolean inLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	public void execute(Runnable task) {
+		tasks.add(task);
+		if (!inLoop()) {
+			selector.wakeup();
+		}
+	}
+
+	public void schedule(Runnable task, long delayMillis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		execute(() -> timers.add(new Timer(deadline, task)));
+	}
+
+	@Override
+	public void run() {
+		log.info("Agora I/O loop started");
+		while (true) {
+			try {
+				runTasks();
+				long timeout = runTimers();
+				if (!tasks.isEmpty()) {
+					selector.selectNow();
+				} else {
+					selector.select(timeout);
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						((NioAgoraTransport) key.attachment()).handle(key);
+					}
+				}
+			} catch (Throwable e) {
+				log.error("Agora I/O loop failure", e);
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				log.error("Agora I/O task failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Runs every due timer and returns how long the selector may block, 0 meaning
+	 * forever.
+	 */
+	private long runTimers() {
+		long now = System.nanoTime();
+		Timer timer;
+		while ((timer = timers.peek()) != null && timer.deadline - now <= 0) {
+			timers.poll();
+			tasks.add(timer.task);
+		}
+		if (!tasks.isEmpty()) {
+			runTasks();
+		}
+		timer = timers.peek();
+		if (timer == null) {
+			return 0;
+		}
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(timer.deadline - System.nanoTime()));
+	}
+
+	private record Timer(long deadline, Runnable task) implements Comparable<Timer> {
+
+		@Override
+		public int compareTo(Timer other) {
+			return Long.compare(deadline, other.deadline);
+		}
+
+	}
+
+}
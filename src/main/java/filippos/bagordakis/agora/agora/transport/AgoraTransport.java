@@ -0,0 +1,30 @@
+package filippos.bagordakis.agora.agora.transport;
+
+/**
+ * Owns the connection to the Agora server. Frames are pulled from and pushed to
+ * an {@link AgoraTransportHandler}; the transport only moves bytes and keeps
+ * reconnecting until it is closed.
+ */
+public interface AgoraTransport {
+
+	void start();
+
+	/**
+	 * Signals that the handler has frames waiting to be sent.
+	 */
+	void wakeup();
+
+	/**
+	 * Signals that the handler can take frames again after
+	 * {@link AgoraTransportHandler#canReceive()} turned it down.
+	 */
+	void resumeReading();
+
+	/**
+	 * Drops the current connection and establishes a new one.
+	 */
+	void reconnect();
+
+	void close();
+
+}
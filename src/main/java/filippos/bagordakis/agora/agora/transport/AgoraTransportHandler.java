@@ -0,0 +1,35 @@
+package filippos.bagordakis.agora.agora.transport;
+
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+public interface AgoraTransportHandler {
+
+	void connected();
+
+	void disconnected();
+
+	/**
+	 * @param bytes size of the frame on the wire
+	 */
+	void received(BaseDTO dto, int bytes);
+
+	/**
+	 * Whether another frame may be read. The transport leaves the rest in the
+	 * socket until {@link AgoraTransport#resumeReading()} is called.
+	 */
+	boolean canReceive();
+
+	/**
+	 * Next frame to send, or null when there is nothing pending.
+	 */
+	BaseDTO poll();
+
+	/**
+	 * Called right before a polled frame is written, so it can be tracked even if
+	 * the write fails.
+	 */
+	void sending(BaseDTO dto);
+
+	void flushed(int frames, int bytes);
+
+}
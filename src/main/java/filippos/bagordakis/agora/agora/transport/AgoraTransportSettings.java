@@ -0,0 +1,6 @@
+package filippos.bagordakis.agora.agora.transport;
+
+public record AgoraTransportSettings(String address, int port, int reconnectDelay, int batchSize, int batchBytes,
+		long linger) {
+
+}
@@ -0,0 +1,260 @@
+package filippos.bagordakis.agora.agora.transport;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.codec.AgoraCodec;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameReader;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameWriter;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * One blocking socket served by a Listener thread, which also (re)connects, and
+ * a Writer thread that drains the handler in batches.
+ */
+public class BlockingAgoraTransport implements AgoraTransport {
+
+	private static final Logger log = LoggerFactory.getLogger(BlockingAgoraTransport.class);
+
+	private static final long PAUSE_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final AgoraTransportSettings settings;
+	private final AgoraCodec codec;
+	private final AgoraTransportHandler handler;
+
+	private final Thread listenerThread;
+	private final Thread writerThread;
+
+	private Socket socket = null;
+
+	private volatile AgoraFrameWriter out = null;
+	private AgoraFrameReader in = null;
+
+	private volatile boolean running;
+	private volatile boolean connected;
+
+	public BlockingAgoraTransport(AgoraTransportSettings settings, AgoraCodec codec, AgoraTransportHandler handler) {
+		this.settings = settings;
+		this.codec = codec;
+		this.handler = handler;
+		this.listenerThread = new Thread(new Listener(), "agora-listener");
+		this.writerThread = new Thread(new Writer(), "agora-writer");
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		listenerThread.start();
+		writerThread.start();
+	}
+
+	@Override
+	public void wakeup() {
+		LockSupport.unpark(writerThread);
+	}
+
+	@Override
+	public void resumeReading() {
+		LockSupport.unpark(listenerThread);
+	}
+
+	@Override
+	public void reconnect() {
+		closeConnections();
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(writerThread);
+		closeConnections();
+	}
+
+	private synchronized void closeConnections() {
+		boolean wasConnected = connected;
+		connected = false;
+		try {
+			if (socket != null && socket.isConnected()) {
+				socket.close();
+				log.info("Closing connection to Agora");
+			}
+		} catch (IOException e) {
+			log.error("Failed to close connection to Agora : {}", e.getMessage());
+		}
+		socket = null;
+		out = null;
+		in = null;
+		if (wasConnected) {
+			handler.disconnected();
+		}
+	}
+
+	private void establishConnection() {
+		while (running) {
+			try {
+				closeConnections();
+				acquireSocket();
+				synchronized (this) {
+					if (socket == null) {
+						continue;
+					}
+					out = codec.newWriter(socket.getOutputStream());
+					in = codec.newReader(socket.getInputStream());
+					connected = true;
+				}
+				handler.connected();
+				LockSupport.unpark(writerThread);
+				break;
+			} catch (IOException e) {
+				log.error("Failed to connect due to {}", e.getMessage());
+			}
+		}
+	}
+
+	private void acquireSocket() {
+		while (running) {
+			try {
+				Socket candidate = new Socket(settings.address(), settings.port());
+				candidate.setTcpNoDelay(true);
+				if (candidate.isConnected()) {
+					synchronized (this) {
+						socket = candidate;
+					}
+					log.info("Connected to Agora at  [{}]:[{}]", settings.address(), settings.port());
+					break;
+				}
+			} catch (UnknownHostException e) {
+				log.error("Unkown host  {}", e.getMessage());
+				throw new RuntimeException(e);
+			} catch (IOException e) {
+				log.error("Failed to connect to Agora at [{}]:[{}] with message : {}", settings.address(),
+						settings.port(), e.getMessage());
+				try {
+					Thread.sleep(settings.reconnectDelay());
+				} catch (InterruptedException e2) {
+					throw new RuntimeException(e2);
+				}
+			}
+		}
+	}
+
+	private class Listener implements Runnable {
+
+		@Override
+		public void run() {
+
+			log.info("Agora Listener started");
+
+			while (running) {
+
+				establishConnection();
+
+				AgoraFrameReader reader = in;
+				try {
+					BaseDTO dto;
+					long bytesRead = reader == null ? 0 : reader.getBytesRead();
+					while (reader != null && awaitCredit() && (dto = reader.read()) != null) {
+						long total = reader.getBytesRead();
+						handler.received(dto, (int) (total - bytesRead));
+						bytesRead = total;
+					}
+				} catch (IOException e) {
+					if (running) {
+						log.error("{}", e.getMessage());
+					}
+				} catch (ClassNotFoundException e) {
+					log.error("{}", e.getMessage());
+				}
+			}
+
+			log.info("Agora Listener stopped");
+		}
+
+		/**
+		 * Parks while the handler cannot take more, leaving the frames to TCP.
+		 */
+		private boolean awaitCredit() {
+			while (running && !handler.canReceive()) {
+				LockSupport.parkNanos(this, PAUSE_RECHECK_NANOS);
+			}
+			return running;
+		}
+
+	}
+
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+
+			log.info("Agora Writer started");
+
+			while (running) {
+
+				AgoraFrameWriter writer = out;
+				if (!connected || writer == null) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(settings.reconnectDelay()));
+					continue;
+				}
+
+				try {
+					if (writeBatch(writer) == 0) {
+						LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+					}
+				} catch (IOException e) {
+					if (running) {
+						log.error("Failed to serialize and send object", e);
+						reconnect();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Drains the handler into the buffered stream until either the frame or the
+		 * byte budget is spent, lingering for late arrivals if configured, and flushes
+		 * once.
+		 */
+		private int writeBatch(AgoraFrameWriter writer) throws IOException {
+			int frames = 0;
+			int bytes = 0;
+			long lingerDeadline = 0;
+
+			while (frames < settings.batchSize() && bytes < settings.batchBytes()) {
+				BaseDTO dto = handler.poll();
+				if (dto == null) {
+					if (frames == 0 || settings.linger() <= 0) {
+						break;
+					}
+					long now = System.nanoTime();
+					if (lingerDeadline == 0) {
+						lingerDeadline = now + TimeUnit.MILLISECONDS.toNanos(settings.linger());
+					}
+					if (now >= lingerDeadline) {
+						break;
+					}
+					LockSupport.parkNanos(this, lingerDeadline - now);
+					continue;
+				}
+
+				handler.sending(dto);
+				bytes += writer.write(dto);
+				frames++;
+				log.debug("Sent object [{}] over TCP", dto.toString());
+			}
+
+			if (frames > 0) {
+				writer.flush();
+				handler.flushed(frames, bytes);
+			}
+			return frames;
+		}
+	}
+
+}
@@ -0,0 +1,320 @@
+package filippos.bagordakis.agora.agora.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.codec.AgoraFrameBuffer;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+/**
+ * Non blocking transport driven by the shared {@link AgoraSelectorLoop}. Frames
+ * are batched into a direct buffer and written with a single gathering write;
+ * frames that do not fit the buffer are gathered in as their own segment.
+ */
+public class NioAgoraTransport implements AgoraTransport {
+
+	private static final Logger log = LoggerFactory.getLogger(NioAgoraTransport.class);
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final AgoraSelectorLoop loop;
+	private final AgoraTransportSettings settings;
+	private final BinaryAgoraCodec codec;
+	private final AgoraTransportHandler handler;
+
+	private final AgoraFrameBuffer frame = new AgoraFrameBuffer();
+	private final ByteBuffer writeBuffer;
+	private final ByteBuffer[] gather;
+	private ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
+	private final Runnable writeTask = () -> {
+		writeScheduled.set(false);
+		try {
+			flushOutbound();
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	};
+
+	private SocketChannel channel;
+	private SelectionKey key;
+	private int gatherCount;
+	private int pendingFrames;
+	private int pendingBytes;
+	private boolean readPaused;
+
+	private volatile boolean running;
+	private volatile boolean connected;
+
+	public NioAgoraTransport(AgoraSelectorLoop loop, AgoraTransportSettings settings, BinaryAgoraCodec codec,
+			AgoraTransportHandler handler) {
+		this.loop = loop;
+		this.settings = settings;
+		this.codec = codec;
+		this.handler = handler;
+		this.writeBuffer = ByteBuffer.allocateDirect(Math.max(settings.batchBytes(), READ_BUFFER_SIZE));
+		this.gather = new ByteBuffer[settings.batchSize() * 2 + 1];
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		loop.execute(this::connect);
+	}
+
+	@Override
+	public void wakeup() {
+		if (writeScheduled.compareAndSet(false, true)) {
+			if (settings.linger() > 0) {
+				loop.schedule(writeTask, settings.linger());
+			} else {
+				loop.execute(writeTask);
+			}
+		}
+	}
+
+	@Override
+	public void resumeReading() {
+		loop.execute(this::resume);
+	}
+
+	@Override
+	public void reconnect() {
+		loop.execute(() -> fail("Reconnect requested"));
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		loop.execute(() -> fail("Closing connection to Agora"));
+	}
+
+	void handle(SelectionKey key) {
+		try {
+			if (key.isConnectable()) {
+				finishConnect();
+			}
+			if (key.isValid() && key.isReadable()) {
+				read();
+			}
+			if (key.isValid() && key.isWritable()) {
+				flushOutbound();
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	private void connect() {
+		if (!running || channel != null) {
+			return;
+		}
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+			if (channel.connect(new InetSocketAddress(settings.address(), settings.port()))) {
+				finishConnect();
+			}
+		} catch (IOException | UnresolvedAddressException e) {
+			log.error("Failed to connect to Agora at [{}]:[{}] with message : {}", settings.address(), settings.port(),
+					e.getMessage());
+			fail(null);
+		}
+	}
+
+	private void finishConnect() throws IOException {
+		if (!channel.finishConnect()) {
+			return;
+		}
+		key.interestOps(SelectionKey.OP_READ);
+		connected = true;
+		log.info("Connected to Agora at  [{}]:[{}]", settings.address(), settings.port());
+		handler.connected();
+		flushOutbound();
+	}
+
+	private void fail(String reason) {
+		boolean wasConnected = connected;
+		connected = false;
+		if (reason != null) {
+			log.info("{}", reason);
+		}
+		if (key != null) {
+			key.cancel();
+			key = null;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.error("Failed to close connection to Agora : {}", e.getMessage());
+			}
+			channel = null;
+		}
+		clearPending();
+		readBuffer.clear();
+		readPaused = false;
+		if (wasConnected) {
+			handler.disconnected();
+		}
+		if (running) {
+			loop.schedule(this::connect, settings.reconnectDelay());
+		}
+	}
+
+	private void read() throws IOException {
+		if (channel.read(readBuffer) < 0) {
+			throw new IOException("Connection closed by Agora");
+		}
+		decode();
+	}
+
+	/**
+	 * Hands over the complete frames in the read buffer, stopping early and
+	 * taking the channel out of the read set when the handler runs out of room.
+	 */
+	private void decode() throws IOException {
+		readBuffer.flip();
+
+		int needed = 0;
+		while (readBuffer.remaining() >= Integer.BYTES) {
+			if (!handler.canReceive()) {
+				readPaused = true;
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				break;
+			}
+			int position = readBuffer.position();
+			int length = readBuffer.getInt(position);
+			if (length < 0 || length > BinaryAgoraCodec.MAX_FRAME_LENGTH) {
+				throw new IOException("Invalid frame length " + length);
+			}
+			if (readBuffer.remaining() < Integer.BYTES + length) {
+				needed = Integer.BYTES + length;
+				break;
+			}
+
+			ByteBuffer slice = readBuffer.slice(position + Integer.BYTES, length);
+			readBuffer.position(position + Integer.BYTES + length);
+
+			BaseDTO dto = codec.decode(slice);
+			if (dto != null) {
+				handler.received(dto, Integer.BYTES + length);
+			}
+		}
+		readBuffer.compact();
+
+		if (needed > readBuffer.capacity()) {
+			ByteBuffer larger = ByteBuffer.allocateDirect(needed);
+			readBuffer.flip();
+			larger.put(readBuffer);
+			readBuffer = larger;
+		}
+	}
+
+	private void resume() {
+		if (!readPaused || !connected) {
+			return;
+		}
+		readPaused = false;
+		try {
+			// What was already read will not show up as readable again
+			decode();
+		} catch (IOException e) {
+			fail(e.getMessage());
+			return;
+		}
+		if (!readPaused) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+		}
+	}
+
+	private void flushOutbound() throws IOException {
+		if (!connected) {
+			return;
+		}
+		if (gatherCount == 0 && !fillBatch()) {
+			interest(false);
+			return;
+		}
+
+		channel.write(gather, 0, gatherCount);
+		if (gather[gatherCount - 1].hasRemaining()) {
+			interest(true);
+			return;
+		}
+
+		boolean full = pendingFrames >= settings.batchSize() || pendingBytes >= settings.batchBytes();
+		handler.flushed(pendingFrames, pendingBytes);
+		clearPending();
+		interest(false);
+
+		if (full) {
+			// Give other connections on the loop a turn before draining the rest
+			wakeup();
+		}
+	}
+
+	private void interest(boolean write) {
+		key.interestOps((readPaused ? 0 : SelectionKey.OP_READ) | (write ? SelectionKey.OP_WRITE : 0));
+	}
+
+	private boolean fillBatch() {
+		writeBuffer.clear();
+		int segmentStart = 0;
+
+		while (pendingFrames < settings.batchSize() && pendingBytes < settings.batchBytes()) {
+			BaseDTO dto = handler.poll();
+			if (dto == null) {
+				break;
+			}
+
+			handler.sending(dto);
+			try {
+				codec.encodeFrame(dto, frame);
+			} catch (IOException e) {
+				log.error("Failed to serialize object [{}] : {}", dto, e.getMessage());
+				continue;
+			}
+
+			if (frame.size() <= writeBuffer.remaining()) {
+				writeBuffer.put(frame.array(), 0, frame.size());
+			} else {
+				if (writeBuffer.position() > segmentStart) {
+					gather[gatherCount++] = writeBuffer.slice(segmentStart, writeBuffer.position() - segmentStart);
+					segmentStart = writeBuffer.position();
+				}
+				gather[gatherCount++] = ByteBuffer.wrap(Arrays.copyOf(frame.array(), frame.size()));
+			}
+			pendingFrames++;
+			pendingBytes += frame.size();
+			log.debug("Sent object [{}] over TCP", dto);
+		}
+
+		if (writeBuffer.position() > segmentStart) {
+			gather[gatherCount++] = writeBuffer.slice(segmentStart, writeBuffer.position() - segmentStart);
+		}
+		return gatherCount > 0;
+	}
+
+	private void clearPending() {
+		Arrays.fill(gather, 0, gatherCount, null);
+		gatherCount = 0;
+		pendingFrames = 0;
+		pendingBytes = 0;
+	}
+
+}
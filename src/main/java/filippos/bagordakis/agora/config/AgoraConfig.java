@@ -4,8 +4,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.reflections.Reflections;
 import org.slf4j.Logger;
@@ -17,27 +18,39 @@ import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import filippos.bagordakis.agora.agora.Agora;
 import filippos.bagordakis.agora.agora.AgoraDistributionHandler;
-import filippos.bagordakis.agora.agora.data.event.AgoraEvent;
+import filippos.bagordakis.agora.index.AgoraIndex;
 import filippos.bagordakis.agora.stoa.annotation.Dose;
 import filippos.bagordakis.agora.stoa.annotation.Stoa;
 import filippos.bagordakis.agora.stoa.enums.ResponseTypesEnum;
+import filippos.bagordakis.agora.stoa.proxy.StoaInvocationHandler;
 import filippos.bagordakis.agora.stoa.settings.StoaMethodSettings;
 import filippos.bagordakis.agora.stoa.settings.StoaMethodSettings.Builder;
 import filippos.bagordakis.agora.stoa.settings.StoaSettings;
 import jakarta.annotation.PostConstruct;
 
-@Import({ Agora.class, AgoraDistributionHandler.class })
-public class AgoraConfig implements BeanFactoryPostProcessor, BeanPostProcessor, ApplicationEventPublisherAware {
+@Import({ Agora.class, AgoraDistributionHandler.class, AgoraMetricsConfig.class })
+public class AgoraConfig
+		implements BeanFactoryPostProcessor, BeanPostProcessor, ApplicationEventPublisherAware, EnvironmentAware {
 
 	private static Logger log = LoggerFactory.getLogger(AgoraConfig.class);
 
 	@Autowired
 	private ApplicationEventPublisher applicationEventPublisher;
 
+	private boolean publishEvents;
+
+	private boolean useIndex = true;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
 	@PostConstruct
 	public void init() {
 		log.info("Agora is now open");
@@ -45,9 +58,10 @@ public class AgoraConfig implements BeanFactoryPostProcessor, BeanPostProcessor,
 
 	@Override
 	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
-		Reflections reflections = new Reflections("");
-		Set<Class<?>> annotated = reflections.getTypesAnnotatedWith(Stoa.class);
-		for (Class<?> proxyInterface : annotated) {
+		// Agora is not created yet, proxies look it up on their first call
+		ClassLoader classLoader = beanFactory.getBeanClassLoader() != null ? beanFactory.getBeanClassLoader()
+				: AgoraConfig.class.getClassLoader();
+		for (Class<?> proxyInterface : findStoas(classLoader)) {
 			if (!proxyInterface.isInterface()) {
 				continue;
 			}
@@ -56,55 +70,69 @@ public class AgoraConfig implements BeanFactoryPostProcessor, BeanPostProcessor,
 			String beanName = stoaAnnotation.value().equals("") ? proxyInterface.getSimpleName()
 					: stoaAnnotation.value();
 			beanName = Character.toLowerCase(beanName.charAt(0)) + beanName.substring(1);
-			Object proxy = createProxyObject(iface, stoaAnnotation);
+			Object proxy = createProxyObject(iface, stoaAnnotation, beanFactory);
 			beanFactory.registerSingleton(beanName, proxy);
 		}
 	}
 
+	/**
+	 * Reads the stoas from the index written at compile time and only scans the
+	 * class path when no jar carries one. Stoas compiled without the processor
+	 * are not in it, agora.index.enabled=false brings back the scan for them.
+	 */
+	private Collection<Class<?>> findStoas(ClassLoader classLoader) {
+		AgoraIndex index = useIndex ? AgoraIndex.load(classLoader) : null;
+		if (index != null) {
+			log.info("Reading the stoas from {}, set agora.index.enabled=false to scan the class path instead",
+					AgoraIndex.LOCATION);
+			return index.getStoaInterfaces();
+		}
+		log.info("No {} found, scanning the class path for stoas", AgoraIndex.LOCATION);
+		return new Reflections("").getTypesAnnotatedWith(Stoa.class);
+	}
+
 	private StoaSettings extractSettings(Class<?> iface, Stoa stoaAnnotation) {
 		StoaSettings requestClientSettings = new StoaSettings();
 		for (Method method : iface.getMethods()) {
 			if (method.isAnnotationPresent(Dose.class))
-				requestClientSettings = extractDataFromMethod(requestClientSettings, method);
+				requestClientSettings = extractDataFromMethod(requestClientSettings, method, stoaAnnotation);
 		}
 		return requestClientSettings;
 	}
 
-	private StoaSettings extractDataFromMethod(StoaSettings stoaSettings, Method method) {
+	private StoaSettings extractDataFromMethod(StoaSettings stoaSettings, Method method, Stoa stoaAnnotation) {
 		ResponseTypesEnum type = ResponseTypesEnum.BODY;
 		Class<?> returnType = method.getReturnType();
 		Type responseType = method.getGenericReturnType();
-		if (responseType instanceof ParameterizedType) {
-			if (returnType == Optional.class) {
-				type = ResponseTypesEnum.OPTIONAL;
-			} else {
-				throw new RuntimeException(returnType + " is not supported");
+		if (returnType == Optional.class || returnType == CompletableFuture.class) {
+			if (!(responseType instanceof ParameterizedType)) {
+				throw new RuntimeException(method + " must declare the type of its reply");
 			}
+			type = returnType == Optional.class ? ResponseTypesEnum.OPTIONAL : ResponseTypesEnum.FUTURE;
 			responseType = ((ParameterizedType) responseType).getActualTypeArguments()[0];
 		}
 		
 		Dose doseAnnotation = method.getAnnotation(Dose.class);
 		
-		Class<?> responseClass = (Class<?>) responseType;
-		Builder builder = new StoaMethodSettings.Builder(responseClass, type, doseAnnotation.value(), doseAnnotation.targets());
+		Class<?> responseClass = responseType instanceof ParameterizedType parameterized
+				? (Class<?>) parameterized.getRawType()
+				: (Class<?>) responseType;
+		Builder builder = new StoaMethodSettings.Builder(responseClass, type, doseAnnotation.value(), doseAnnotation.targets())
+				.durable(doseAnnotation.durable() || stoaAnnotation.durable())
+				.responseType(responseType)
+				.timeout(doseAnnotation.timeout())
+				.priority(doseAnnotation.priority());
 
 		stoaSettings.addMethodSettings(method, builder.build());
 		return stoaSettings;
 	}
 
-	private Object createProxyObject(Class<?> iface, Stoa stoaAnnotation) {
+	private Object createProxyObject(Class<?> iface, Stoa stoaAnnotation, ConfigurableListableBeanFactory beanFactory) {
 		StoaSettings stoaSettings = extractSettings(iface, stoaAnnotation);
 		log.info("Proxing {}", iface);
-		return Proxy.newProxyInstance(iface.getClassLoader(), new Class[] { iface }, (proxyObj, method, args) -> {
-			return proxyCode(proxyObj, method, args, stoaSettings.getMethodSettings(method));
-		});
-	}
-
-	private Object proxyCode(Object proxyObj, Method method, Object[] args, StoaMethodSettings settings) {
-		log.info("Dose got executed");
-		Object toSend = args.length > 0 ? args[0] : null;
-		applicationEventPublisher.publishEvent(new AgoraEvent(this, toSend, settings.getValue(), settings.getTargets()));		
-		return null;
+		StoaInvocationHandler handler = new StoaInvocationHandler(iface, stoaSettings,
+				() -> beanFactory.getBean(Agora.class), () -> applicationEventPublisher, objectMapper, publishEvents);
+		return Proxy.newProxyInstance(iface.getClassLoader(), new Class[] { iface }, handler);
 	}
 
 	@Override
@@ -112,4 +140,10 @@ public class AgoraConfig implements BeanFactoryPostProcessor, BeanPostProcessor,
 		this.applicationEventPublisher = applicationEventPublisher;
 	}
 
+	@Override
+	public void setEnvironment(Environment environment) {
+		this.publishEvents = environment.getProperty("agora.stoa.publish-events", Boolean.class, false);
+		this.useIndex = environment.getProperty("agora.index.enabled", Boolean.class, true);
+	}
+
 }
@@ -0,0 +1,24 @@
+package filippos.bagordakis.agora.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import filippos.bagordakis.agora.agora.Agora;
+import filippos.bagordakis.agora.agora.AgoraDistributionHandler;
+import filippos.bagordakis.agora.agora.metrics.AgoraMeterBinder;
+
+/**
+ * Binds the Agora metrics to every Micrometer registry of the application, if
+ * Micrometer is on the class path at all.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+public class AgoraMetricsConfig {
+
+	@Bean
+	public AgoraMeterBinder agoraMeterBinder(Agora agora, AgoraDistributionHandler agoraDistributionHandler) {
+		return new AgoraMeterBinder(agora, agoraDistributionHandler);
+	}
+
+}
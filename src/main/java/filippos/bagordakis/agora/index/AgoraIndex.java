@@ -0,0 +1,145 @@
+package filippos.bagordakis.agora.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the {@value #LOCATION} files written by {@link AgoraIndexProcessor}.
+ * Every line is {@code kind=class} or {@code kind=class#method(parameters)}
+ * with binary class names, kind being {@code stoa} or {@code kripteia}.
+ */
+public class AgoraIndex {
+
+	public static final String LOCATION = "META-INF/agora.index";
+
+	static final String STOA = "stoa";
+	static final String KRIPTEIA = "kripteia";
+
+	private final ClassLoader classLoader;
+	private final List<String> stoas = new ArrayList<>();
+	private final Map<String, List<String>> kripteias = new LinkedHashMap<>();
+
+	private AgoraIndex(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Loads and merges every index on the class path, or returns null if there
+	 * is none and the caller has to scan instead.
+	 */
+	public static AgoraIndex load(ClassLoader classLoader) {
+		try {
+			Enumeration<URL> urls = classLoader.getResources(LOCATION);
+			if (!urls.hasMoreElements()) {
+				return null;
+			}
+			AgoraIndex index = new AgoraIndex(classLoader);
+			while (urls.hasMoreElements()) {
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(urls.nextElement().openStream(), StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						index.add(line.trim());
+					}
+				}
+			}
+			return index;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read " + LOCATION, e);
+		}
+	}
+
+	private void add(String line) {
+		int separator = line.indexOf('=');
+		if (line.isEmpty() || line.startsWith("#") || separator < 0) {
+			return;
+		}
+		String kind = line.substring(0, separator);
+		String value = line.substring(separator + 1);
+		switch (kind) {
+		case STOA -> stoas.add(value);
+		case KRIPTEIA ->
+			kripteias.computeIfAbsent(value.substring(0, value.indexOf('#')), x -> new ArrayList<>()).add(value);
+		default -> {
+		}
+		}
+	}
+
+	public List<Class<?>> getStoaInterfaces() {
+		List<Class<?>> types = new ArrayList<>(stoas.size());
+		for (String name : stoas) {
+			types.add(load(name));
+		}
+		return types;
+	}
+
+	/**
+	 * Handler methods grouped by the class declaring them.
+	 */
+	public Map<Class<?>, List<Method>> getKripteiaMethods() {
+		Map<Class<?>, List<Method>> methods = new LinkedHashMap<>();
+		for (Map.Entry<String, List<String>> entry : kripteias.entrySet()) {
+			methods.put(load(entry.getKey()), methods(entry.getValue()));
+		}
+		return methods;
+	}
+
+	private List<Method> methods(List<String> signatures) {
+		List<Method> methods = new ArrayList<>(signatures.size());
+		for (String signature : signatures) {
+			int hash = signature.indexOf('#');
+			int open = signature.indexOf('(', hash);
+			Class<?> type = load(signature.substring(0, hash));
+			String name = signature.substring(hash + 1, open);
+			String parameters = signature.substring(open + 1, signature.length() - 1);
+
+			List<Class<?>> parameterTypes = new ArrayList<>();
+			if (!parameters.isEmpty()) {
+				for (String parameter : parameters.split(",")) {
+					parameterTypes.add(load(parameter));
+				}
+			}
+			try {
+				methods.add(type.getDeclaredMethod(name, parameterTypes.toArray(new Class<?>[0])));
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(LOCATION + " is out of date, " + signature + " does not exist", e);
+			}
+		}
+		return methods;
+	}
+
+	private Class<?> load(String name) {
+		if (name.endsWith("[]")) {
+			return Array.newInstance(load(name.substring(0, name.length() - 2)), 0).getClass();
+		}
+		return switch (name) {
+		case "boolean" -> boolean.class;
+		case "byte" -> byte.class;
+		case "char" -> char.class;
+		case "short" -> short.class;
+		case "int" -> int.class;
+		case "long" -> long.class;
+		case "float" -> float.class;
+		case "double" -> double.class;
+		default -> {
+			try {
+				yield Class.forName(name, false, classLoader);
+			} catch (ClassNotFoundException e) {
+				throw new RuntimeException(LOCATION + " is out of date, " + name + " does not exist", e);
+			}
+		}
+		};
+	}
+
+}
@@ -0,0 +1,149 @@
+package filippos.bagordakis.agora.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import filippos.bagordakis.agora.kripteia.Kripteia;
+import filippos.bagordakis.agora.kripteia.Krypteias;
+import filippos.bagordakis.agora.stoa.annotation.Stoa;
+
+/**
+ * Writes {@value AgoraIndex#LOCATION} with every {@link Stoa} interface and
+ * every {@link Kripteia} method of a {@link Krypteias} class, so startup does not have to scan the class path.
+ * Entries of an earlier index are kept for types that still exist, which keeps
+ * the index whole across incremental builds.
+ */
+@SupportedAnnotationTypes({ "filippos.bagordakis.agora.stoa.annotation.Stoa",
+		"filippos.bagordakis.agora.kripteia.Krypteias" })
+public class AgoraIndexProcessor extends AbstractProcessor {
+
+	private final Set<String> entries = new TreeSet<>();
+	private final Set<String> processed = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(Stoa.class)) {
+			if (element.getKind() != ElementKind.INTERFACE) {
+				continue;
+			}
+			TypeElement type = (TypeElement) element;
+			String name = binaryName(type);
+			processed.add(name);
+			entries.add(AgoraIndex.STOA + "=" + name);
+		}
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(Krypteias.class)) {
+			if (!(element instanceof TypeElement type)) {
+				continue;
+			}
+			String name = binaryName(type);
+			processed.add(name);
+			for (Element member : type.getEnclosedElements()) {
+				if (member.getKind() == ElementKind.METHOD && member.getAnnotation(Kripteia.class) != null) {
+					entries.add(AgoraIndex.KRIPTEIA + "=" + signature(name, (ExecutableElement) member));
+				}
+			}
+		}
+
+		if (roundEnv.processingOver()) {
+			write();
+		}
+		return false;
+	}
+
+	private void write() {
+		mergePrevious();
+		if (entries.isEmpty()) {
+			return;
+		}
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					AgoraIndex.LOCATION);
+			try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+				writer.write("# Generated by " + getClass().getSimpleName() + "\n");
+				for (String entry : entries) {
+					writer.write(entry);
+					writer.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Could not write " + AgoraIndex.LOCATION + ": " + e.getMessage());
+		}
+	}
+
+	private void mergePrevious() {
+		try {
+			FileObject previous = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					AgoraIndex.LOCATION);
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(previous.openInputStream(), StandardCharsets.UTF_8))) {
+				for (String line : reader.lines().collect(Collectors.toList())) {
+					int separator = line.indexOf('=');
+					if (line.startsWith("#") || separator < 0) {
+						continue;
+					}
+					String value = line.substring(separator + 1);
+					String type = value.contains("#") ? value.substring(0, value.indexOf('#')) : value;
+					if (!processed.contains(type)
+							&& processingEnv.getElementUtils().getTypeElement(type.replace('$', '.')) != null) {
+						entries.add(line);
+					}
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// Nothing to merge on a clean build
+		}
+	}
+
+	private String signature(String type, ExecutableElement method) {
+		return type + "#" + method.getSimpleName() + "(" + method.getParameters()
+				.stream()
+				.map(parameter -> typeName(parameter.asType()))
+				.collect(Collectors.joining(",")) + ")";
+	}
+
+	private String typeName(TypeMirror type) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+		if (erased.getKind() == TypeKind.ARRAY) {
+			return typeName(((ArrayType) erased).getComponentType()) + "[]";
+		}
+		if (erased.getKind() == TypeKind.DECLARED) {
+			return binaryName((TypeElement) ((DeclaredType) erased).asElement());
+		}
+		return erased.toString();
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+}
@@ -5,10 +5,47 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import filippos.bagordakis.agora.agora.enums.ExecutionModesEnum;
+
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Kripteia {
 	
 	String value();
+
+	/**
+	 * Maximum concurrent invocations, or 0 for the configured default.
+	 */
+	int concurrency() default 0;
+
+	/**
+	 * Requests that may wait for a free slot, or 0 for the configured default.
+	 */
+	int queueCapacity() default 0;
+
+	/**
+	 * Handlers that block on I/O should run {@code VIRTUAL}, pooled handlers
+	 * share a pool sized to the cores.
+	 */
+	ExecutionModesEnum execution() default ExecutionModesEnum.DEFAULT;
+
+	/**
+	 * Json field, or json pointer, whose value orders the requests. Requests
+	 * with the same value are handled one at a time in arrival order on a fixed
+	 * partition instead of the bulkhead.
+	 */
+	String orderBy() default "";
+
+	/**
+	 * Batches up to this many requests into one call of a method taking a
+	 * {@code List}, or 0 to call it once per request.
+	 */
+	int batchSize() default 0;
+
+	/**
+	 * Milliseconds a batch may wait to fill up, 0 to only batch what piles up
+	 * while the handler is busy.
+	 */
+	long batchLinger() default 0;
 	
 }
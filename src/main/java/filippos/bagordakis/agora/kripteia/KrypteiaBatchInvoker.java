@@ -0,0 +1,15 @@
+package filippos.bagordakis.agora.kripteia;
+
+import java.util.List;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Calls one batched {@link Kripteia} method with the json payloads of a batch.
+ */
+@FunctionalInterface
+public interface KrypteiaBatchInvoker {
+
+	Object invoke(List<RequestDTO> requestDTOs) throws Exception;
+
+}
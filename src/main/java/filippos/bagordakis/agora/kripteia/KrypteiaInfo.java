@@ -1,14 +1,13 @@
 package filippos.bagordakis.agora.kripteia;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
-import filippos.bagordakis.agora.common.helper.AgoraHelper;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
 
-public record KrypteiaInfo(Object bean, Method method, Class<?> firstParamType) {
+public record KrypteiaInfo(Object bean, Method method, KrypteiaInvoker invoker) {
 
-	public void execute(String json) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-		method.invoke(bean, AgoraHelper.convert(json, firstParamType));
+	public Object execute(RequestDTO requestDTO) throws Exception {
+		return invoker.invoke(requestDTO);
 	}
 	
 }
@@ -0,0 +1,13 @@
+package filippos.bagordakis.agora.kripteia;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Calls one {@link Kripteia} method with the json payload of a request.
+ */
+@FunctionalInterface
+public interface KrypteiaInvoker {
+
+	Object invoke(RequestDTO requestDTO) throws Exception;
+
+}
@@ -0,0 +1,200 @@
+package filippos.bagordakis.agora.kripteia;
+
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Builds the {@link KrypteiaInvoker} of a handler once, at wiring time. The
+ * method is bound through {@link LambdaMetafactory} so each request is a plain
+ * interface call, and the payload is read by an {@link ObjectReader} resolved
+ * for the generic parameter type up front, from the raw bytes when the request
+ * came off the wire. Methods the metafactory cannot bind
+ * fall back to a method handle adapted to a generic shape.
+ */
+public final class KrypteiaInvokers {
+
+	private static final Logger log = LoggerFactory.getLogger(KrypteiaInvokers.class);
+
+	private KrypteiaInvokers() {
+	}
+
+	public static KrypteiaInvoker create(Object bean, Method method, ObjectMapper objectMapper) {
+		if (method.getParameterCount() > 1) {
+			throw new RuntimeException("@Kripteia method " + method + " must take at most one parameter");
+		}
+
+		MethodHandles.Lookup lookup;
+		MethodHandle handle;
+		try {
+			lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+			handle = lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Cannot access @Kripteia method " + method, e);
+		}
+
+		if (method.getParameterCount() == 0) {
+			Function<Object, Object> target = bindNoArgument(lookup, handle, method);
+			return requestDTO -> target.apply(bean);
+		}
+
+		ObjectReader reader = objectMapper.readerFor(objectMapper.constructType(method.getGenericParameterTypes()[0]));
+		BiFunction<Object, Object, Object> target = bindArgument(lookup, handle, method);
+		return requestDTO -> target.apply(bean, read(reader, requestDTO));
+	}
+
+	/**
+	 * Builds the invoker of a handler taking a {@code List<T>}, reading every
+	 * payload of the batch as one {@code T}.
+	 */
+	public static KrypteiaBatchInvoker createBatch(Object bean, Method method, ObjectMapper objectMapper) {
+		if (method.getParameterCount() != 1 || !List.class.isAssignableFrom(method.getParameterTypes()[0])
+				|| !method.getParameterTypes()[0].isAssignableFrom(ArrayList.class)) {
+			throw new RuntimeException("Batched @Kripteia method " + method + " must take a single List parameter");
+		}
+
+		MethodHandles.Lookup lookup;
+		MethodHandle handle;
+		try {
+			lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+			handle = lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Cannot access @Kripteia method " + method, e);
+		}
+
+		Type elementType = Object.class;
+		if (method.getGenericParameterTypes()[0] instanceof ParameterizedType parameterized) {
+			elementType = parameterized.getActualTypeArguments()[0];
+		}
+		ObjectReader reader = objectMapper.readerFor(objectMapper.constructType(elementType));
+		BiFunction<Object, Object, Object> target = bindArgument(lookup, handle, method);
+		return requestDTOs -> {
+			List<Object> batch = new ArrayList<>(requestDTOs.size());
+			for (RequestDTO requestDTO : requestDTOs) {
+				batch.add(read(reader, requestDTO));
+			}
+			return target.apply(bean, batch);
+		};
+	}
+
+	private static Object read(ObjectReader reader, RequestDTO requestDTO) throws IOException {
+		if (requestDTO instanceof RawRequestDTO rawRequestDTO) {
+			byte[] payload = rawRequestDTO.getPayload();
+			return payload == null ? null : reader.readValue(payload);
+		}
+		String json = requestDTO.getJsonData();
+		return json == null ? null : reader.readValue(json);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Function<Object, Object> bindNoArgument(MethodHandles.Lookup lookup, MethodHandle handle,
+			Method method) {
+		if (!Modifier.isStatic(method.getModifiers())) {
+			try {
+				Class<?> returnType = method.getReturnType();
+				if (returnType == void.class) {
+					Consumer<Object> consumer = (Consumer<Object>) metafactory(lookup, handle, Consumer.class,
+							"accept", MethodType.methodType(void.class, Object.class),
+							MethodType.methodType(void.class, method.getDeclaringClass()));
+					return bean -> {
+						consumer.accept(bean);
+						return null;
+					};
+				}
+				return (Function<Object, Object>) metafactory(lookup, handle, Function.class, "apply",
+						MethodType.methodType(Object.class, Object.class),
+						MethodType.methodType(wrap(returnType), method.getDeclaringClass()));
+			} catch (Throwable e) {
+				log.debug("Falling back to a method handle for {}", method, e);
+			}
+		}
+
+		MethodHandle generic = Modifier.isStatic(method.getModifiers())
+				? MethodHandles.dropArguments(handle, 0, Object.class)
+				: handle;
+		MethodHandle invoker = generic.asType(MethodType.methodType(Object.class, Object.class));
+		return bean -> {
+			try {
+				return invoker.invokeExact(bean);
+			} catch (Throwable e) {
+				throw sneakyThrow(e);
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BiFunction<Object, Object, Object> bindArgument(MethodHandles.Lookup lookup, MethodHandle handle,
+			Method method) {
+		if (!Modifier.isStatic(method.getModifiers())) {
+			try {
+				Class<?> returnType = method.getReturnType();
+				Class<?> parameterType = wrap(method.getParameterTypes()[0]);
+				if (returnType == void.class) {
+					BiConsumer<Object, Object> consumer = (BiConsumer<Object, Object>) metafactory(lookup, handle,
+							BiConsumer.class, "accept", MethodType.methodType(void.class, Object.class, Object.class),
+							MethodType.methodType(void.class, method.getDeclaringClass(), parameterType));
+					return (bean, argument) -> {
+						consumer.accept(bean, argument);
+						return null;
+					};
+				}
+				return (BiFunction<Object, Object, Object>) metafactory(lookup, handle, BiFunction.class, "apply",
+						MethodType.methodType(Object.class, Object.class, Object.class),
+						MethodType.methodType(wrap(returnType), method.getDeclaringClass(), parameterType));
+			} catch (Throwable e) {
+				log.debug("Falling back to a method handle for {}", method, e);
+			}
+		}
+
+		MethodHandle generic = Modifier.isStatic(method.getModifiers())
+				? MethodHandles.dropArguments(handle, 0, Object.class)
+				: handle;
+		MethodHandle invoker = generic.asType(MethodType.methodType(Object.class, Object.class, Object.class));
+		return (bean, argument) -> {
+			try {
+				return invoker.invokeExact(bean, argument);
+			} catch (Throwable e) {
+				throw sneakyThrow(e);
+			}
+		};
+	}
+
+	private static Object metafactory(MethodHandles.Lookup lookup, MethodHandle handle, Class<?> functionalInterface,
+			String name, MethodType erasedType, MethodType instantiatedType) throws Throwable {
+		CallSite site = LambdaMetafactory.metafactory(lookup, name, MethodType.methodType(functionalInterface),
+				erasedType, handle, instantiatedType);
+		return site.getTarget().invoke();
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E extends Throwable> RuntimeException sneakyThrow(Throwable e) throws E {
+		throw (E) e;
+	}
+
+}
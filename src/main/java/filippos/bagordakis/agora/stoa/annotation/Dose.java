@@ -5,9 +5,21 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
+
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Dose {
 	public String value();
 	public String[] targets() default {};
+	public boolean durable() default false;
+	/**
+	 * Milliseconds to wait for the reply, 0 for agora.reply.timeout.
+	 */
+	public long timeout() default 0;
+	/**
+	 * Order among requests waiting to be written, higher priorities overtake
+	 * lower ones by the agora.queue.priority-weights.
+	 */
+	public PrioritiesEnum priority() default PrioritiesEnum.NORMAL;
 }
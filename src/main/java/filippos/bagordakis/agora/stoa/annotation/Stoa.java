@@ -9,4 +9,5 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Stoa {	
 	public String value() default "";
+	public boolean durable() default false;
 }
@@ -2,5 +2,5 @@ package filippos.bagordakis.agora.stoa.enums;
 
 public enum ResponseTypesEnum {
 
-	OPTIONAL, RESPONSE_BODY, BODY 
+	OPTIONAL, RESPONSE_BODY, BODY, FUTURE
 }
@@ -0,0 +1,180 @@
+package filippos.bagordakis.agora.stoa.proxy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import filippos.bagordakis.agora.agora.Agora;
+import filippos.bagordakis.agora.agora.data.event.AgoraDoseEvent;
+import filippos.bagordakis.agora.agora.exception.AgoraReplyException;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.common.helper.AgoraHelper;
+import filippos.bagordakis.agora.stoa.settings.StoaMethodSettings;
+import filippos.bagordakis.agora.stoa.settings.StoaSettings;
+
+/**
+ * Sends {@link filippos.bagordakis.agora.stoa.annotation.Dose} calls straight
+ * to {@link Agora}. The settings of each method are resolved on its first call
+ * and kept by identity of the {@link Method} the proxy passes in, so later
+ * calls cost one identity lookup. With {@code publishEvents} every call is
+ * also published as an {@link AgoraDoseEvent} after it was sent, for
+ * applications that want to observe them.
+ * <p>
+ * Methods returning a value wait for the reply of the handler. A
+ * {@code CompletableFuture} is returned as is, an {@code Optional} is empty if
+ * the reply timed out and any other type blocks until the reply arrives.
+ */
+public class StoaInvocationHandler implements InvocationHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(StoaInvocationHandler.class);
+
+	private record Call(StoaMethodSettings settings, ObjectReader reader) {
+	}
+
+	private final Class<?> iface;
+	private final StoaSettings stoaSettings;
+	private final Supplier<Agora> agoraSupplier;
+	private final Supplier<ApplicationEventPublisher> publisherSupplier;
+	private final ObjectMapper objectMapper;
+	private final boolean publishEvents;
+
+	private volatile Agora agora;
+	private volatile Map<Method, Call> resolved = new IdentityHashMap<>();
+
+	public StoaInvocationHandler(Class<?> iface, StoaSettings stoaSettings, Supplier<Agora> agoraSupplier,
+			Supplier<ApplicationEventPublisher> publisherSupplier, ObjectMapper objectMapper, boolean publishEvents) {
+		this.iface = iface;
+		this.stoaSettings = stoaSettings;
+		this.agoraSupplier = agoraSupplier;
+		this.publisherSupplier = publisherSupplier;
+		this.objectMapper = objectMapper;
+		this.publishEvents = publishEvents;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Call call = resolved.get(method);
+		if (call == null) {
+			if (method.getDeclaringClass() == Object.class) {
+				return invokeObjectMethod(proxy, method, args);
+			}
+			if (method.isDefault()) {
+				return InvocationHandler.invokeDefault(proxy, method, args);
+			}
+			call = resolve(method);
+		}
+
+		StoaMethodSettings settings = call.settings();
+		Object toSend = args != null && args.length > 0 ? args[0] : null;
+		RequestDTO requestDTO = AgoraHelper.objectToRequestDTO(toSend, settings.getValue(), settings.getTargets());
+		if (call.reader() == null) {
+			agora().send(requestDTO, settings.isDurable(), settings.getPriority());
+			publish(proxy, requestDTO, settings);
+			return null;
+		}
+
+		ObjectReader reader = call.reader();
+		CompletableFuture<Object> future = agora()
+				.request(requestDTO, settings.isDurable(), settings.getTimeout(), settings.getPriority())
+				.thenApply(json -> read(reader, json));
+		publish(proxy, requestDTO, settings);
+
+		return switch (settings.getResponseTypesEnum()) {
+		case FUTURE -> future;
+		case OPTIONAL -> {
+			try {
+				yield Optional.ofNullable(future.join());
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof TimeoutException) {
+					yield Optional.empty();
+				}
+				throw unwrap(e);
+			}
+		}
+		default -> {
+			try {
+				yield future.join();
+			} catch (CompletionException e) {
+				throw unwrap(e);
+			}
+		}
+		};
+	}
+
+	private void publish(Object proxy, RequestDTO requestDTO, StoaMethodSettings settings) {
+		if (publishEvents) {
+			publisherSupplier.get()
+					.publishEvent(new AgoraDoseEvent(proxy, requestDTO, settings.isDurable(), settings.getPriority()));
+		}
+	}
+
+	private static Object read(ObjectReader reader, String json) {
+		if (json == null) {
+			return null;
+		}
+		try {
+			return reader.readValue(json);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static RuntimeException unwrap(CompletionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException runtimeException) {
+			return runtimeException;
+		}
+		return new AgoraReplyException(String.valueOf(cause.getMessage()), cause);
+	}
+
+	private synchronized Call resolve(Method method) {
+		StoaMethodSettings settings = stoaSettings.getMethodSettings(method);
+		if (settings == null) {
+			throw new RuntimeException(method + " is not annotated with @Dose");
+		}
+		ObjectReader reader = settings.expectsReply()
+				? objectMapper.readerFor(objectMapper.constructType(settings.getResponseType()))
+				: null;
+		Call call = new Call(settings, reader);
+
+		Map<Method, Call> copy = new IdentityHashMap<>(resolved);
+		copy.put(method, call);
+		resolved = copy;
+		log.debug("Resolved dose {} for {}", settings.getValue(), method);
+		return call;
+	}
+
+	private Agora agora() {
+		Agora current = agora;
+		if (current == null) {
+			current = agoraSupplier.get();
+			agora = current;
+		}
+		return current;
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		return switch (method.getName()) {
+		case "equals" -> proxy == args[0];
+		case "hashCode" -> System.identityHashCode(proxy);
+		case "toString" -> "Stoa proxy for " + iface.getName();
+		default -> throw new UnsupportedOperationException(method.toString());
+		};
+	}
+
+}
@@ -1,8 +1,10 @@
 package filippos.bagordakis.agora.stoa.settings;
 
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.List;
 
+import filippos.bagordakis.agora.agora.enums.PrioritiesEnum;
 import filippos.bagordakis.agora.stoa.enums.ResponseTypesEnum;
 
 public class StoaMethodSettings {
@@ -11,12 +13,20 @@ public class StoaMethodSettings {
 	private final ResponseTypesEnum responseTypesEnum;
 	private final String value;
 	private final List<String> targets;
+	private final boolean durable;
+	private final Type responseType;
+	private final long timeout;
+	private final PrioritiesEnum priority;
 
 	private StoaMethodSettings(Builder builder) {
 		this.returnType = builder.returnType;
 		this.responseTypesEnum = builder.type;
 		this.value = builder.value;
 		this.targets = Arrays.asList(builder.targets);
+		this.durable = builder.durable;
+		this.responseType = builder.responseType != null ? builder.responseType : builder.returnType;
+		this.timeout = builder.timeout;
+		this.priority = builder.priority;
 	}
 
 	public Class<?> getReturnType() {
@@ -35,11 +45,38 @@ public class StoaMethodSettings {
 		return targets;
 	}
 
+	public boolean isDurable() {
+		return durable;
+	}
+
+	/**
+	 * Generic form of the return type, inside the Optional or future if any.
+	 */
+	public Type getResponseType() {
+		return responseType;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public PrioritiesEnum getPriority() {
+		return priority;
+	}
+
+	public boolean expectsReply() {
+		return responseTypesEnum == ResponseTypesEnum.FUTURE || (returnType != void.class && returnType != Void.class);
+	}
+
 	public static class Builder {
 		private final Class<?> returnType;
 		private final ResponseTypesEnum type;
 		private final String value;
 		private final String[] targets;
+		private boolean durable;
+		private Type responseType;
+		private long timeout;
+		private PrioritiesEnum priority = PrioritiesEnum.NORMAL;
 
 		public Builder(Class<?> returnType, ResponseTypesEnum type, String value, String[] targets) {
 			this.returnType = returnType;
@@ -48,6 +85,26 @@ public class StoaMethodSettings {
 			this.targets = targets;
 		}
 
+		public Builder durable(boolean durable) {
+			this.durable = durable;
+			return this;
+		}
+
+		public Builder responseType(Type responseType) {
+			this.responseType = responseType;
+			return this;
+		}
+
+		public Builder timeout(long timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public Builder priority(PrioritiesEnum priority) {
+			this.priority = priority;
+			return this;
+		}
+
 		public StoaMethodSettings build() {
 			return new StoaMethodSettings(this);
 		}
@@ -0,0 +1,75 @@
+package filippos.bagordakis.agora.agora;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+
+class AgoraAcknowledgerTest {
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+	private final BlockingQueue<BaseDTO> sent = new LinkedBlockingQueue<>();
+
+	@AfterEach
+	void stopTimer() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	void fullBatchGoesOutAtOnce() {
+		AgoraAcknowledger acknowledger = new AgoraAcknowledger(3, 60000, timer, sent::add);
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+		UUID third = UUID.randomUUID();
+
+		acknowledger.acknowledge(first);
+		acknowledger.acknowledge(second);
+		assertTrue(sent.isEmpty());
+		acknowledger.acknowledge(third);
+
+		AcknowledgmentBatchDTO batch = assertInstanceOf(AcknowledgmentBatchDTO.class, sent.poll(), "batch");
+		assertEquals(List.of(first, second, third), batch.getAcknowledged());
+	}
+
+	@Test
+	void lingerFlushesAPartialBatch() throws InterruptedException {
+		AgoraAcknowledger acknowledger = new AgoraAcknowledger(128, 5, timer, sent::add);
+		UUID id = UUID.randomUUID();
+
+		acknowledger.acknowledge(id);
+
+		BaseDTO dto = sent.poll(5, TimeUnit.SECONDS);
+		assertInstanceOf(AcknowledgmentDTO.class, dto, "single acknowledgment");
+		assertEquals(id, dto.getId());
+	}
+
+	@Test
+	void flushesRightAwayOnceTheTimerIsDown() {
+		AgoraAcknowledger acknowledger = new AgoraAcknowledger(128, 60000, timer, sent::add);
+		UUID lingering = UUID.randomUUID();
+		UUID late = UUID.randomUUID();
+
+		acknowledger.acknowledge(lingering);
+		timer.shutdownNow();
+		acknowledger.acknowledge(late);
+
+		AcknowledgmentBatchDTO batch = assertInstanceOf(AcknowledgmentBatchDTO.class, sent.poll(), "batch");
+		assertEquals(List.of(lingering, late), batch.getAcknowledged());
+		assertTrue(sent.isEmpty());
+	}
+
+}
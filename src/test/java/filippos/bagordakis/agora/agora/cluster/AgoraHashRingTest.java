@@ -0,0 +1,66 @@
+package filippos.bagordakis.agora.agora.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AgoraHashRingTest {
+
+	private static final List<String> SERVERS = List.of("athens:4000", "sparta:4000", "corinth:4000");
+	private static final int KEYS = 10000;
+
+	private final AgoraHashRing ring = new AgoraHashRing(SERVERS, 160);
+
+	@Test
+	void keysSpreadOverEveryServer() {
+		int[] owned = new int[SERVERS.size()];
+		for (int key = 0; key < KEYS; key++) {
+			owned[ring.owner(hash(key), server -> true)]++;
+		}
+
+		for (int server = 0; server < owned.length; server++) {
+			assertTrue(owned[server] > KEYS / 5, "server " + server + " owns " + owned[server]);
+		}
+	}
+
+	@Test
+	void ejectingMovesOnlyTheKeysOfTheEjectedServer() {
+		int moved = 0;
+		for (int key = 0; key < KEYS; key++) {
+			int owner = ring.owner(hash(key), server -> true);
+			int failedOver = ring.owner(hash(key), server -> server != 1);
+
+			assertNotEquals(1, failedOver);
+			if (owner != 1) {
+				assertEquals(owner, failedOver, "key " + key);
+			} else {
+				moved++;
+			}
+		}
+		assertTrue(moved > 0);
+	}
+
+	@Test
+	void theNaturalOwnerIsKeptWhenNoServerIsUsable() {
+		for (int key = 0; key < 100; key++) {
+			assertEquals(ring.owner(hash(key), server -> true), ring.owner(hash(key), server -> false));
+		}
+	}
+
+	@Test
+	void targetsAreHashedApartFromTheKeyword() {
+		assertEquals(AgoraHashRing.hash(List.of(), "orders"), AgoraHashRing.hash(null, "orders"));
+		assertNotEquals(AgoraHashRing.hash(List.of("ab", "c"), "orders"),
+				AgoraHashRing.hash(List.of("a", "bc"), "orders"));
+		assertEquals(AgoraHashRing.hash(List.of("athens"), "orders"), AgoraHashRing.hash(List.of("athens"), "users"));
+	}
+
+	private static long hash(int key) {
+		return AgoraHashRing.hash(List.of("target-" + key), null);
+	}
+
+}
@@ -0,0 +1,206 @@
+package filippos.bagordakis.agora.agora.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.agora.data.dto.HandshakeDTO;
+import filippos.bagordakis.agora.agora.data.dto.RawRequestDTO;
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.enums.CompressionTypesEnum;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.GreetingDTO;
+import filippos.bagordakis.agora.common.dto.HeartbeatDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+class BinaryAgoraCodecTest {
+
+	private final BinaryAgoraCodec codec = new BinaryAgoraCodec();
+
+	@Test
+	void requestRoundTrip() throws IOException {
+		RequestDTO sent = new RequestDTO(UUID.randomUUID(), "orders", List.of("athens", "sparta"), "{\"id\":1}");
+
+		RequestDTO received = assertInstanceOf(RequestDTO.class, roundTrip(codec, sent), "request");
+
+		assertEquals(sent.getId(), received.getId());
+		assertEquals("orders", received.getKeyword());
+		assertEquals(List.of("athens", "sparta"), received.getTargets());
+		assertEquals("{\"id\":1}", received.getJsonData());
+	}
+
+	@Test
+	void nullFieldsSurvive() throws IOException {
+		RequestDTO received = (RequestDTO) roundTrip(codec, new RequestDTO(UUID.randomUUID(), null, null, null));
+
+		assertNull(received.getKeyword());
+		assertNull(received.getTargets());
+		assertNull(received.getJsonData());
+	}
+
+	@Test
+	void onlyAwaitedRequestsAskForAReply() throws IOException {
+		RequestDTO plain = new RequestDTO(UUID.randomUUID(), "orders", List.of(), "{\"id\":1}");
+
+		RawRequestDTO awaited = (RawRequestDTO) roundTrip(codec, RawRequestDTO.expectingReply(plain));
+		assertTrue(awaited.isReplyExpected());
+		assertEquals(plain.getId(), awaited.getId());
+		assertEquals("{\"id\":1}", awaited.getJsonData());
+
+		assertFalse(((RawRequestDTO) roundTrip(codec, plain)).isReplyExpected());
+	}
+
+	@Test
+	void responseRoundTrip() throws IOException {
+		UUID correlationId = UUID.randomUUID();
+		ResponseDTO sent = new ResponseDTO(UUID.randomUUID(), "orders", List.of(), "\"ok\"", correlationId, "failed");
+
+		ResponseDTO received = assertInstanceOf(ResponseDTO.class, roundTrip(codec, sent), "response");
+
+		assertEquals(sent.getId(), received.getId());
+		assertEquals(correlationId, received.getCorrelationId());
+		assertEquals("\"ok\"", received.getJsonData());
+		assertEquals("failed", received.getError());
+	}
+
+	@Test
+	void controlFramesRoundTrip() throws IOException {
+		UUID id = UUID.randomUUID();
+
+		assertEquals(id, assertInstanceOf(AcknowledgmentDTO.class, roundTrip(codec, new AcknowledgmentDTO(id)), "ack")
+				.getId());
+		HeartbeatDTO heartbeat = HeartbeatDTO.newInstance();
+		assertEquals(heartbeat.getId(),
+				assertInstanceOf(HeartbeatDTO.class, roundTrip(codec, heartbeat), "heartbeat").getId());
+		GreetingDTO greeting = (GreetingDTO) roundTrip(codec, new GreetingDTO(id, "Athens"));
+		assertEquals("Athens", greeting.getName());
+	}
+
+	@Test
+	void acknowledgmentBatchRoundTrip() throws IOException {
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+		long[] ids = { first.getMostSignificantBits(), first.getLeastSignificantBits(),
+				second.getMostSignificantBits(), second.getLeastSignificantBits() };
+
+		AcknowledgmentBatchDTO received = (AcknowledgmentBatchDTO) roundTrip(codec,
+				new AcknowledgmentBatchDTO(UUID.randomUUID(), ids));
+
+		assertArrayEquals(ids, received.getPackedIds());
+		assertEquals(List.of(first, second), received.getAcknowledged());
+	}
+
+	@Test
+	void handshakeTrailingPartsAreOptional() throws IOException {
+		UUID token = UUID.randomUUID();
+
+		HandshakeDTO plain = (HandshakeDTO) roundTrip(codec,
+				new HandshakeDTO(UUID.randomUUID(), "Athens", List.of("DEFLATE")));
+		assertEquals(List.of("DEFLATE"), plain.getCompressions());
+		assertNull(plain.getSession());
+		assertEquals(0, plain.getCredits());
+
+		HandshakeDTO credits = (HandshakeDTO) roundTrip(codec,
+				new HandshakeDTO(UUID.randomUUID(), "Athens", List.of(), null, 0, 64));
+		assertNull(credits.getSession());
+		assertEquals(64, credits.getCredits());
+
+		HandshakeDTO full = (HandshakeDTO) roundTrip(codec,
+				new HandshakeDTO(UUID.randomUUID(), "Athens", List.of(), token, 42, 64));
+		assertEquals(token, full.getSession());
+		assertEquals(42, full.getLastReceived());
+		assertEquals(64, full.getCredits());
+	}
+
+	@Test
+	void largePayloadsAreCompressedOnceNegotiated() throws IOException {
+		AgoraCompression compression = new AgoraCompression(CompressionTypesEnum.DEFLATE, 64, 1);
+		BinaryAgoraCodec deflating = new BinaryAgoraCodec(compression);
+		RequestDTO sent = new RequestDTO(UUID.randomUUID(), "orders", List.of(), "x".repeat(4096));
+
+		AgoraFrameBuffer frame = new AgoraFrameBuffer();
+		deflating.encodeFrame(sent, frame);
+		assertEquals(0, frame.array()[Integer.BYTES + 1] & BinaryAgoraCodec.COMPRESSED);
+
+		compression.negotiate(List.of("DEFLATE"));
+		deflating.encodeFrame(sent, frame);
+		assertTrue((frame.array()[Integer.BYTES + 1] & BinaryAgoraCodec.COMPRESSED) != 0);
+		assertTrue(frame.size() < 4096);
+
+		RequestDTO received = (RequestDTO) deflating
+				.decode(ByteBuffer.wrap(frame.array(), Integer.BYTES, frame.size() - Integer.BYTES).slice());
+		assertEquals(sent.getJsonData(), received.getJsonData());
+	}
+
+	@Test
+	void streamsCarrySeveralFrames() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AgoraFrameWriter writer = codec.newWriter(out);
+		RequestDTO request = new RequestDTO(UUID.randomUUID(), "orders", List.of(), "1");
+		AcknowledgmentDTO ack = new AcknowledgmentDTO(UUID.randomUUID());
+		writer.write(request);
+		writer.write(ack);
+		writer.flush();
+
+		AgoraFrameReader reader = codec.newReader(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(request.getId(), reader.read().getId());
+		assertEquals(ack.getId(), reader.read().getId());
+	}
+
+	@Test
+	void oversizedLengthIsRejected() throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + 18);
+		frame.putInt(BinaryAgoraCodec.MAX_FRAME_LENGTH + 1);
+
+		AgoraFrameReader reader = codec.newReader(new ByteArrayInputStream(frame.array()));
+
+		assertThrows(IOException.class, reader::read);
+	}
+
+	@Test
+	void truncatedFramesAreRejected() throws IOException {
+		AgoraFrameBuffer frame = new AgoraFrameBuffer();
+		codec.encodeFrame(new RequestDTO(UUID.randomUUID(), "orders", List.of("athens"), "{}"), frame);
+		int length = frame.size() - Integer.BYTES;
+
+		for (int cut : new int[] { 0, 1, 10, 18, 20, length - 1 }) {
+			ByteBuffer truncated = ByteBuffer.wrap(frame.array(), Integer.BYTES, cut).slice();
+			assertThrows(IOException.class, () -> codec.decode(truncated), "frame cut at " + cut);
+		}
+	}
+
+	@Test
+	void truncatedFramesInAStreamAreRejected() throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + 3);
+		frame.putInt(3);
+		frame.put(BinaryAgoraCodec.REQUEST);
+
+		AgoraFrameReader reader = codec.newReader(new ByteArrayInputStream(frame.array()));
+
+		assertThrows(IOException.class, reader::read);
+	}
+
+	private static BaseDTO roundTrip(BinaryAgoraCodec codec, BaseDTO dto) throws IOException {
+		AgoraFrameBuffer frame = new AgoraFrameBuffer();
+		codec.encodeFrame(dto, frame);
+		int length = ByteBuffer.wrap(frame.array()).getInt();
+		assertEquals(frame.size() - Integer.BYTES, length);
+		return codec.decode(ByteBuffer.wrap(frame.array(), Integer.BYTES, length).slice());
+	}
+
+}
@@ -0,0 +1,99 @@
+package filippos.bagordakis.agora.agora.dedup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class AgoraDedupWindowTest {
+
+	@Test
+	void redeliveriesAreRecognised() {
+		AgoraDedupWindow window = new AgoraDedupWindow(64, 60000);
+		UUID id = UUID.randomUUID();
+
+		assertTrue(window.add(id));
+		assertFalse(window.add(id));
+		assertEquals(1, window.size());
+	}
+
+	@Test
+	void removingKeepsTheRestOfTheProbeRuns() {
+		AgoraDedupWindow window = new AgoraDedupWindow(4096, 60000);
+		List<UUID> ids = ids(1000);
+		for (UUID id : ids) {
+			window.add(id);
+		}
+		for (int i = 0; i < ids.size(); i++) {
+			if (i % 2 == 0) {
+				window.acknowledged(ids.get(i));
+			}
+		}
+
+		for (int i = 0; i < ids.size(); i += 3) {
+			window.remove(ids.get(i));
+		}
+
+		assertEquals(1000 - 334, window.size());
+		for (int i = 0; i < ids.size(); i++) {
+			UUID id = ids.get(i);
+			if (i % 3 == 0) {
+				assertFalse(window.isAcknowledged(id));
+				assertTrue(window.add(id), "removed id " + i + " is delivered again");
+			} else {
+				assertEquals(i % 2 == 0, window.isAcknowledged(id), "state of id " + i);
+				assertFalse(window.add(id), "id " + i + " is still a duplicate");
+			}
+		}
+	}
+
+	@Test
+	void idsAreAcknowledgedOnlyWhenMarked() {
+		AgoraDedupWindow window = new AgoraDedupWindow(64, 60000);
+		UUID id = UUID.randomUUID();
+
+		window.add(id);
+		assertFalse(window.isAcknowledged(id));
+		window.acknowledged(id);
+		assertTrue(window.isAcknowledged(id));
+
+		window.remove(id);
+		assertTrue(window.add(id));
+		assertFalse(window.isAcknowledged(id));
+	}
+
+	@Test
+	void oldGenerationsAreForgotten() {
+		AgoraDedupWindow window = new AgoraDedupWindow(8, 60000);
+		UUID first = UUID.randomUUID();
+		window.add(first);
+
+		for (UUID id : ids(16)) {
+			window.add(id);
+		}
+
+		assertTrue(window.size() <= 10, "size " + window.size());
+		assertTrue(window.add(first));
+	}
+
+	@Test
+	void tooSmallAWindowIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new AgoraDedupWindow(2, 60000));
+		assertThrows(IllegalArgumentException.class, () -> new AgoraDedupWindow(64, 0));
+	}
+
+	private static List<UUID> ids(int count) {
+		List<UUID> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			ids.add(UUID.randomUUID());
+		}
+		return ids;
+	}
+
+}
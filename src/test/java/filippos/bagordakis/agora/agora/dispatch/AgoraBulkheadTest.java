@@ -0,0 +1,97 @@
+package filippos.bagordakis.agora.agora.dispatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+
+import filippos.bagordakis.agora.agora.data.dto.ResponseDTO;
+import filippos.bagordakis.agora.agora.flow.AgoraCredits;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+import filippos.bagordakis.agora.kripteia.KrypteiaInfo;
+
+class AgoraBulkheadTest {
+
+	private final List<Runnable> tasks = new ArrayList<>();
+	private final Executor executor = tasks::add;
+	private final AgoraReplier replier = (requestDTO, origin, result, error) -> origin.reply(new ResponseDTO(
+			UUID.randomUUID(), requestDTO.getKeyword(), null, String.valueOf(result), requestDTO.getId(), null));
+
+	@Test
+	void repliesGoBackToWhereTheRequestCameFrom() {
+		AgoraBulkhead bulkhead = bulkhead(16);
+		Origin athens = new Origin();
+		Origin sparta = new Origin();
+		RequestDTO first = request();
+		RequestDTO second = request();
+
+		bulkhead.dispatch(first, athens);
+		bulkhead.dispatch(second, sparta);
+		runTasks();
+
+		assertEquals(List.of(first.getId()), athens.correlationIds());
+		assertEquals(List.of(second.getId()), sparta.correlationIds());
+		assertEquals(2, bulkhead.getCompleted());
+	}
+
+	@Test
+	void requestsAreAcknowledgedOnceQueued() {
+		AgoraBulkhead bulkhead = bulkhead(1);
+		Origin origin = new Origin();
+		RequestDTO queued = request();
+
+		assertTrue(bulkhead.dispatch(queued, origin));
+		assertFalse(bulkhead.dispatch(request(), origin));
+
+		assertEquals(List.of(queued.getId()), origin.acknowledged);
+		assertEquals(1, bulkhead.getRejected());
+	}
+
+	private AgoraBulkhead bulkhead(int queueCapacity) {
+		KrypteiaInfo krypteia = new KrypteiaInfo(null, null, requestDTO -> "done");
+		return new AgoraBulkhead("orders", krypteia, executor, 1, queueCapacity, replier, new AgoraCredits(0));
+	}
+
+	private void runTasks() {
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+	}
+
+	private static RequestDTO request() {
+		return new RequestDTO(UUID.randomUUID(), "orders", List.of(), "{}");
+	}
+
+	private static class Origin implements AgoraRequestAcknowledger {
+
+		private final List<UUID> acknowledged = new ArrayList<>();
+		private final List<ResponseDTO> replies = new ArrayList<>();
+
+		@Override
+		public void acknowledge(UUID id) {
+			acknowledged.add(id);
+		}
+
+		@Override
+		public void release(UUID id) {
+			acknowledged.remove(id);
+		}
+
+		@Override
+		public void reply(ResponseDTO responseDTO) {
+			replies.add(responseDTO);
+		}
+
+		List<UUID> correlationIds() {
+			return replies.stream().map(ResponseDTO::getCorrelationId).toList();
+		}
+
+	}
+
+}
@@ -0,0 +1,75 @@
+package filippos.bagordakis.agora.agora.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AgoraHistogramTest {
+
+	@Test
+	void bucketsCoverEveryValueInOrder() {
+		long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, 1L << 40, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+		int previous = -1;
+		for (long value : values) {
+			int index = AgoraHistogram.indexOf(value);
+
+			assertTrue(index >= previous, "index of " + value);
+			assertTrue(AgoraHistogram.highestOf(index) >= value, "bucket of " + value + " ends before it");
+			if (index > 0) {
+				assertTrue(AgoraHistogram.highestOf(index - 1) < value, "bucket before " + value + " reaches it");
+			}
+			previous = index;
+		}
+	}
+
+	@Test
+	void bucketsAreWithinAnEighthOfTheirValues() {
+		for (long value = 8; value < 1L << 20; value += value / 7) {
+			long highest = AgoraHistogram.highestOf(AgoraHistogram.indexOf(value));
+
+			assertTrue(highest - value <= value / 8, "bucket of " + value + " ends at " + highest);
+		}
+	}
+
+	@Test
+	void smallValuesAreExact() {
+		for (int value = 0; value < 8; value++) {
+			assertEquals(value, AgoraHistogram.indexOf(value));
+			assertEquals(value, AgoraHistogram.highestOf(value));
+		}
+	}
+
+	@Test
+	void percentilesAreReportedFromTheBuckets() {
+		AgoraHistogram histogram = new AgoraHistogram();
+		for (int micros = 1; micros <= 1000; micros++) {
+			histogram.record(micros);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		long median = histogram.getValueAtPercentile(50);
+		assertTrue(median >= 500 && median <= 500 * 9 / 8, "median " + median);
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+		assertEquals(1, histogram.getValueAtPercentile(0));
+	}
+
+	@Test
+	void histogramsAddUp() {
+		AgoraHistogram first = new AgoraHistogram();
+		AgoraHistogram second = new AgoraHistogram();
+		first.record(10);
+		second.record(-5);
+		second.recordNanos(2_000_000);
+
+		first.add(second);
+
+		assertEquals(3, first.getCount());
+		assertEquals(2000, first.getMax());
+		assertEquals(0, first.getValueAtPercentile(1));
+		assertEquals(0, new AgoraHistogram().getValueAtPercentile(99));
+	}
+
+}
@@ -0,0 +1,134 @@
+package filippos.bagordakis.agora.agora.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+class AgoraOutboxTest {
+
+	private static final int SEGMENT_SIZE = 512;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void replaysOnlyWhatWasNotCompleted() throws IOException {
+		List<RequestDTO> appended = requests(10);
+		try (AgoraOutbox outbox = open()) {
+			for (RequestDTO requestDTO : appended) {
+				outbox.append(requestDTO);
+			}
+			outbox.complete(appended.get(1).getId());
+			outbox.complete(List.of(appended.get(4).getId(), appended.get(7).getId()));
+		}
+
+		List<RequestDTO> expected = new ArrayList<>(appended);
+		expected.remove(7);
+		expected.remove(4);
+		expected.remove(1);
+		try (AgoraOutbox outbox = new AgoraOutbox(directory, SEGMENT_SIZE, 0)) {
+			assertEquals(ids(expected), ids(outbox.open()));
+			assertEquals(expected.size(), outbox.getPending());
+		}
+	}
+
+	@Test
+	void completionsInLaterSegmentsSurviveARestart() throws IOException {
+		List<RequestDTO> appended = requests(60);
+		try (AgoraOutbox outbox = open()) {
+			for (RequestDTO requestDTO : appended) {
+				outbox.append(requestDTO);
+			}
+			// The completions fill segments of their own, none of them holds a live request
+			for (int i = 1; i < appended.size(); i++) {
+				outbox.complete(appended.get(i).getId());
+			}
+		}
+
+		try (AgoraOutbox outbox = new AgoraOutbox(directory, SEGMENT_SIZE, 0)) {
+			assertEquals(ids(appended.subList(0, 1)), ids(outbox.open()));
+		}
+	}
+
+	@Test
+	void completionsOutOfOrderSurviveARestart() throws IOException {
+		List<RequestDTO> appended = requests(60);
+		List<UUID> live = new ArrayList<>();
+		try (AgoraOutbox outbox = open()) {
+			for (int i = 0; i < appended.size(); i++) {
+				outbox.append(appended.get(i));
+				live.add(appended.get(i).getId());
+				// Completes a request a few segments back while keeping every fifth one
+				if (i >= 6 && (i - 6) % 5 != 0) {
+					outbox.complete(appended.get(i - 6).getId());
+					live.remove(appended.get(i - 6).getId());
+				}
+			}
+		}
+
+		try (AgoraOutbox outbox = new AgoraOutbox(directory, SEGMENT_SIZE, 0)) {
+			assertEquals(new HashSet<>(live), new HashSet<>(ids(outbox.open())));
+		}
+	}
+
+	@Test
+	void completedSegmentsAreDeleted() throws IOException {
+		List<RequestDTO> appended = requests(60);
+		try (AgoraOutbox outbox = open()) {
+			for (RequestDTO requestDTO : appended) {
+				outbox.append(requestDTO);
+			}
+			assertTrue(outbox.getSegments() > 1);
+			for (RequestDTO requestDTO : appended) {
+				outbox.complete(requestDTO.getId());
+			}
+			// Rolling over to a new segment reclaims the old ones
+			for (RequestDTO requestDTO : requests(20)) {
+				outbox.append(requestDTO);
+				outbox.complete(requestDTO.getId());
+			}
+
+			assertEquals(0, outbox.getPending());
+			assertTrue(outbox.getSegments() <= 2, "segments left " + outbox.getSegments());
+			assertEquals(outbox.getSegments(), segmentFiles());
+		}
+	}
+
+	private AgoraOutbox open() throws IOException {
+		AgoraOutbox outbox = new AgoraOutbox(directory, SEGMENT_SIZE, 0);
+		assertEquals(List.of(), outbox.open());
+		return outbox;
+	}
+
+	private long segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	private static List<RequestDTO> requests(int count) {
+		List<RequestDTO> requests = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			requests.add(new RequestDTO(UUID.randomUUID(), "orders", List.of("athens"), "{\"order\":" + i + "}"));
+		}
+		return requests;
+	}
+
+	private static List<UUID> ids(List<RequestDTO> requests) {
+		return requests.stream().map(RequestDTO::getId).toList();
+	}
+
+}
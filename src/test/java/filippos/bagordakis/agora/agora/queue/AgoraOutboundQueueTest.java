@@ -0,0 +1,65 @@
+package filippos.bagordakis.agora.agora.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import filippos.bagordakis.agora.agora.enums.OverflowPoliciesEnum;
+import filippos.bagordakis.agora.agora.exception.AgoraQueueFullException;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+class AgoraOutboundQueueTest {
+
+	private final List<BaseDTO> dropped = new ArrayList<>();
+
+	@Test
+	void dropOldestHandsTheEvictedFramesToTheListener() {
+		AgoraOutboundQueue queue = queue(OverflowPoliciesEnum.DROP_OLDEST);
+		List<RequestDTO> requests = requests(6);
+
+		for (RequestDTO request : requests) {
+			queue.add(request);
+		}
+
+		assertEquals(requests.subList(0, 2), dropped);
+		assertEquals(2, queue.getDropped());
+		for (RequestDTO request : requests.subList(2, 6)) {
+			assertSame(request, queue.poll());
+		}
+	}
+
+	@Test
+	void rejectingDropsNothing() {
+		AgoraOutboundQueue queue = queue(OverflowPoliciesEnum.REJECT);
+		List<RequestDTO> requests = requests(5);
+
+		for (RequestDTO request : requests.subList(0, 4)) {
+			queue.add(request);
+		}
+
+		assertThrows(AgoraQueueFullException.class, () -> queue.add(requests.get(4)));
+		assertEquals(List.of(), dropped);
+		assertEquals(1, queue.getRejected());
+	}
+
+	private AgoraOutboundQueue queue(OverflowPoliciesEnum policy) {
+		return new AgoraOutboundQueue(4, policy, 0, Path.of("."), dropped::add);
+	}
+
+	private static List<RequestDTO> requests(int count) {
+		List<RequestDTO> requests = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			requests.add(new RequestDTO(UUID.randomUUID(), "orders", List.of(), "{}"));
+		}
+		return requests;
+	}
+
+}
@@ -0,0 +1,124 @@
+package filippos.bagordakis.agora.agora.retransmit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.GreetingDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+class AgoraRetransmitterTest {
+
+	private final AgoraTimerWheel<AgoraRetransmitter.Entry> wheel = new AgoraTimerWheel<>(64, 5,
+			AgoraRetransmitter.Entry::expire, "test-retransmit");
+	private final BlockingQueue<BaseDTO> retransmitted = new LinkedBlockingQueue<>();
+	private final BlockingQueue<RequestDTO> deadLetters = new LinkedBlockingQueue<>();
+
+	@AfterEach
+	void stopWheel() {
+		wheel.stop();
+	}
+
+	@Test
+	void framesExpiringTogetherBackOffOnce() throws InterruptedException {
+		AgoraRetransmitter retransmitter = start(new AgoraRetransmitSettings(50, 10, 60000, 5));
+
+		for (int i = 0; i < 20; i++) {
+			retransmitter.sending(request());
+		}
+		for (int i = 0; i < 20; i++) {
+			assertNotNull(retransmitted.poll(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals(100, retransmitter.getRetransmissionTimeoutMillis());
+	}
+
+	@Test
+	void everyRetryDoublesTheTimeoutOnce() throws InterruptedException {
+		AgoraRetransmitter retransmitter = start(new AgoraRetransmitSettings(20, 10, 60000, 5));
+		RequestDTO request = request();
+
+		retransmitter.sending(request);
+		for (int attempt = 1; attempt <= 3; attempt++) {
+			assertSame(request, retransmitted.poll(5, TimeUnit.SECONDS));
+			assertEquals(20 << attempt, retransmitter.getRetransmissionTimeoutMillis());
+			retransmitter.sending(request);
+		}
+	}
+
+	@Test
+	void timeoutStaysWithinItsBounds() throws InterruptedException {
+		AgoraRetransmitter retransmitter = start(new AgoraRetransmitSettings(20, 10, 50, 40));
+		RequestDTO request = request();
+
+		retransmitter.sending(request);
+		for (int attempt = 1; attempt <= 5; attempt++) {
+			assertSame(request, retransmitted.poll(5, TimeUnit.SECONDS));
+			retransmitter.sending(request);
+		}
+
+		assertEquals(50, retransmitter.getRetransmissionTimeoutMillis());
+	}
+
+	@Test
+	void exhaustedRequestsAreDeadLettered() throws InterruptedException {
+		AgoraRetransmitter retransmitter = start(new AgoraRetransmitSettings(10, 10, 20, 2));
+		RequestDTO request = request();
+
+		retransmitter.sending(request);
+		for (int attempt = 1; attempt <= 2; attempt++) {
+			assertSame(request, retransmitted.poll(5, TimeUnit.SECONDS));
+			retransmitter.sending(request);
+		}
+
+		assertSame(request, deadLetters.poll(5, TimeUnit.SECONDS));
+		assertEquals(0, retransmitter.getInFlight());
+	}
+
+	@Test
+	void acknowledgedFramesAreNotRetransmitted() throws InterruptedException {
+		AgoraRetransmitter retransmitter = start(new AgoraRetransmitSettings(20, 10, 60000, 5));
+		RequestDTO request = request();
+
+		retransmitter.sending(request);
+		assertSame(request, retransmitter.acknowledge(request.getId()));
+
+		assertNull(retransmitted.poll(100, TimeUnit.MILLISECONDS));
+		assertNull(retransmitter.acknowledge(request.getId()));
+		assertEquals(1, retransmitter.getAckLatency().getCount());
+	}
+
+	@Test
+	void drainReturnsOnlyRequests() throws InterruptedException {
+		AgoraRetransmitter retransmitter = start(new AgoraRetransmitSettings(60000, 10, 60000, 5));
+		RequestDTO request = request();
+		GreetingDTO greeting = new GreetingDTO(UUID.randomUUID(), "Athens");
+
+		retransmitter.sending(request);
+		retransmitter.sending(greeting);
+
+		assertEquals(List.of(request), retransmitter.drain());
+		assertEquals(1, retransmitter.getInFlight());
+	}
+
+	private AgoraRetransmitter start(AgoraRetransmitSettings settings) {
+		wheel.start();
+		return new AgoraRetransmitter(wheel, settings, retransmitted::add, deadLetters::add);
+	}
+
+	private static RequestDTO request() {
+		return new RequestDTO(UUID.randomUUID(), "orders", List.of(), "{}");
+	}
+
+}
@@ -0,0 +1,137 @@
+package filippos.bagordakis.agora.agora.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import filippos.bagordakis.agora.agora.codec.AgoraCompression;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameBuffer;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+class AgoraSessionTest {
+
+	@Test
+	void requestsAreNumberedOnceInSendingOrder() {
+		AgoraSession session = established();
+		RequestDTO first = request();
+		RequestDTO second = request();
+
+		session.sending(first);
+		session.sending(second);
+		session.sending(first);
+
+		assertEquals(1, session.sequenceOf(first));
+		assertEquals(2, session.sequenceOf(second));
+		assertEquals(2, session.getUnacknowledged());
+	}
+
+	@Test
+	void nothingIsNumberedBeforeTheSessionIsEstablished() {
+		AgoraSession session = new AgoraSession(UUID.randomUUID(), true);
+		RequestDTO request = request();
+
+		session.connected();
+		session.sending(request);
+
+		assertTrue(session.isAwaiting());
+		assertEquals(0, session.sequenceOf(request));
+		assertEquals(0, session.getUnacknowledged());
+	}
+
+	@Test
+	void acceptedFramesAdvanceOnlyPastGaps() {
+		AgoraSession session = established();
+
+		accept(session, 1);
+		accept(session, 3);
+		accept(session, 4);
+		assertEquals(1, session.getLastReceived());
+
+		accept(session, 2);
+		assertEquals(4, session.getLastReceived());
+	}
+
+	@Test
+	void resumingReplaysWhatThePeerHasNotReceived() {
+		AgoraSession session = established();
+		List<RequestDTO> sent = List.of(request(), request(), request());
+		for (RequestDTO request : sent) {
+			session.sending(request);
+		}
+
+		assertEquals(sent.subList(0, 1), session.confirm(1));
+		assertEquals(sent.subList(1, 3), session.resume(1));
+		assertEquals(sent.subList(1, 3), session.resume(AgoraSession.UNKNOWN));
+		assertEquals(List.of(), session.confirm(AgoraSession.UNKNOWN));
+		assertEquals(2, session.getUnacknowledged());
+	}
+
+	@Test
+	void takingOverKeepsTheNumbering() {
+		AgoraSession previous = established();
+		RequestDTO request = request();
+		previous.sending(request);
+		accept(previous, 1);
+
+		AgoraSession session = established();
+		session.takeOver(previous);
+		RequestDTO next = request();
+		session.sending(next);
+
+		assertEquals(1, session.getLastReceived());
+		assertEquals(1, session.sequenceOf(request));
+		assertEquals(2, session.sequenceOf(next));
+	}
+
+	@Test
+	void aTurnedAwayFrameDoesNotCountForTheNextUnnumberedOne() throws IOException {
+		AgoraSession sender = established();
+		AgoraSession receiver = established();
+		BinaryAgoraCodec sending = new BinaryAgoraCodec(AgoraCompression.none(), sender);
+		BinaryAgoraCodec receiving = new BinaryAgoraCodec(AgoraCompression.none(), receiver);
+		RequestDTO numbered = request();
+		sender.sending(numbered);
+
+		// The handler refuses the numbered frame and takes an unnumbered one after it
+		receiving.decode(frame(sending, numbered));
+		receiving.decode(frame(new BinaryAgoraCodec(), request()));
+		receiver.accepted();
+
+		assertEquals(0, receiver.getLastReceived());
+		receiving.decode(frame(sending, numbered));
+		receiver.accepted();
+		assertEquals(1, receiver.getLastReceived());
+	}
+
+	private static AgoraSession established() {
+		AgoraSession session = new AgoraSession(UUID.randomUUID(), true);
+		session.connected();
+		session.resume(0);
+		session.proceed();
+		return session;
+	}
+
+	private static void accept(AgoraSession session, long sequence) {
+		session.receiving(sequence);
+		session.accepted();
+	}
+
+	private static ByteBuffer frame(BinaryAgoraCodec codec, BaseDTO dto) throws IOException {
+		AgoraFrameBuffer frame = new AgoraFrameBuffer();
+		codec.encodeFrame(dto, frame);
+		return ByteBuffer.wrap(frame.array(), Integer.BYTES, frame.size() - Integer.BYTES).slice();
+	}
+
+	private static RequestDTO request() {
+		return new RequestDTO(UUID.randomUUID(), "orders", List.of(), "{}");
+	}
+
+}
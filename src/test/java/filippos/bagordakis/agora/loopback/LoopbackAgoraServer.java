@@ -0,0 +1,228 @@
+package filippos.bagordakis.agora.loopback;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import filippos.bagordakis.agora.agora.codec.AgoraCodec;
+import filippos.bagordakis.agora.agora.codec.AgoraCompression;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameReader;
+import filippos.bagordakis.agora.agora.codec.AgoraFrameWriter;
+import filippos.bagordakis.agora.agora.codec.BinaryAgoraCodec;
+import filippos.bagordakis.agora.agora.codec.SerializationAgoraCodec;
+import filippos.bagordakis.agora.agora.data.dto.AcknowledgmentBatchDTO;
+import filippos.bagordakis.agora.agora.data.dto.HandshakeDTO;
+import filippos.bagordakis.agora.agora.enums.CompressionTypesEnum;
+import filippos.bagordakis.agora.agora.session.AgoraSession;
+import filippos.bagordakis.agora.common.dto.AcknowledgmentDTO;
+import filippos.bagordakis.agora.common.dto.BaseDTO;
+import filippos.bagordakis.agora.common.dto.GreetingDTO;
+import filippos.bagordakis.agora.common.dto.HeartbeatDTO;
+import filippos.bagordakis.agora.common.dto.RequestDTO;
+
+/**
+ * Minimal in process stand in for an Agora server, bound to the loopback
+ * interface. It acknowledges greetings and requests, answers heartbeats and can
+ * echo requests back to their sender. Handshakes offering deflate or a
+ * resumable session are accepted, sessions outlive {@link #dropClients()}. The
+ * wire format is detected per connection, so both {@link BinaryAgoraCodec} and
+ * {@link SerializationAgoraCodec} clients are served. {@link #stall()} keeps
+ * the connections open but stops answering on them, as a hung server would.
+ */
+public class LoopbackAgoraServer implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(LoopbackAgoraServer.class);
+
+	private static final int STREAM_MAGIC = 0xACED;
+
+	private final ServerSocket serverSocket;
+	private final boolean echo;
+	private final List<Socket> clients = new CopyOnWriteArrayList<>();
+	private final Map<UUID, AgoraSession> sessions = new ConcurrentHashMap<>();
+	private final AtomicLong receivedRequests = new AtomicLong();
+	private volatile boolean running;
+	private volatile boolean stalled;
+
+	public LoopbackAgoraServer(int port, boolean echo) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.echo = echo;
+	}
+
+	public LoopbackAgoraServer start() {
+		running = true;
+		Thread acceptor = new Thread(this::accept, "loopback-agora-" + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return this;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public long getReceivedRequests() {
+		return receivedRequests.get();
+	}
+
+	/**
+	 * Stops reading from the clients until {@link #recover()}, frames already
+	 * read are handled only then.
+	 */
+	public void stall() {
+		stalled = true;
+	}
+
+	public synchronized void recover() {
+		stalled = false;
+		notifyAll();
+	}
+
+	private synchronized void awaitRecovery() throws InterruptedException {
+		while (stalled && running) {
+			wait(100);
+		}
+	}
+
+	/**
+	 * Closes every client connection but keeps accepting new ones, as a server
+	 * restart would look to the clients.
+	 */
+	public void dropClients() throws IOException {
+		for (Socket client : clients) {
+			client.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverSocket.close();
+		for (Socket client : clients) {
+			client.close();
+		}
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				Socket client = serverSocket.accept();
+				client.setTcpNoDelay(true);
+				clients.add(client);
+				Thread handler = new Thread(() -> serve(client), "loopback-agora-client");
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException e) {
+				if (running) {
+					log.error("Loopback server failed to accept : {}", e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void serve(Socket client) {
+		try (client) {
+			PushbackInputStream in = new PushbackInputStream(client.getInputStream(), 2);
+			AgoraCompression compression = new AgoraCompression(CompressionTypesEnum.DEFLATE, 1024, 1);
+			AgoraSession session = new AgoraSession(null, true);
+			AgoraCodec codec = detectCodec(in, compression, session);
+			AgoraFrameWriter out = codec.newWriter(client.getOutputStream());
+			AgoraFrameReader reader = codec.newReader(in);
+			log.info("Loopback client {} speaks {}", client.getRemoteSocketAddress(), codec.getClass().getSimpleName());
+
+			while (running) {
+				BaseDTO dto = reader.read();
+				awaitRecovery();
+				if (dto instanceof HeartbeatDTO) {
+					out.write(HeartbeatDTO.newInstance());
+				} else if (dto instanceof HandshakeDTO handshakeDTO) {
+					handshake(handshakeDTO, compression, session, out);
+					out.write(new AcknowledgmentDTO(dto.getId()));
+				} else if (dto instanceof GreetingDTO) {
+					out.write(new AcknowledgmentDTO(dto.getId()));
+				} else if (dto instanceof RequestDTO requestDTO) {
+					receivedRequests.incrementAndGet();
+					session.accepted();
+					out.write(new AcknowledgmentDTO(dto.getId()));
+					if (echo) {
+						session.sending(requestDTO);
+						out.write(requestDTO);
+					}
+				} else if (dto instanceof AcknowledgmentBatchDTO batchDTO) {
+					// Acks come back on the first lane, whichever connection sent the request
+					for (UUID id : batchDTO.getAcknowledged()) {
+						acknowledged(id);
+					}
+				} else if (dto instanceof AcknowledgmentDTO) {
+					acknowledged(dto.getId());
+				}
+				out.flush();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			log.debug("Loopback client disconnected : {}", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			clients.remove(client);
+		}
+	}
+
+	/**
+	 * Answers ahead of the greeting acknowledgment, the client takes an
+	 * acknowledgment without a handshake as no. A known session is taken over
+	 * and what the client has not seen of it replayed.
+	 */
+	private void handshake(HandshakeDTO handshakeDTO, AgoraCompression compression, AgoraSession session,
+			AgoraFrameWriter out) throws IOException {
+		CompressionTypesEnum negotiated = compression.negotiate(handshakeDTO.getCompressions());
+		List<String> compressions = negotiated == CompressionTypesEnum.NONE ? List.of() : List.of(negotiated.name());
+		if (handshakeDTO.getSession() == null) {
+			if (!compressions.isEmpty()) {
+				out.write(new HandshakeDTO(UUID.randomUUID(), "loopback", compressions));
+			}
+			return;
+		}
+
+		AgoraSession previous = sessions.put(handshakeDTO.getSession(), session);
+		long lastReceived = AgoraSession.UNKNOWN;
+		if (previous != null) {
+			session.takeOver(previous);
+			lastReceived = session.getLastReceived();
+		}
+		session.confirm(handshakeDTO.getLastReceived());
+		List<RequestDTO> replay = session.resume(handshakeDTO.getLastReceived());
+		out.write(new HandshakeDTO(UUID.randomUUID(), "loopback", compressions, handshakeDTO.getSession(),
+				lastReceived));
+		for (RequestDTO requestDTO : replay) {
+			out.write(requestDTO);
+		}
+		session.proceed();
+	}
+
+	private void acknowledged(UUID id) {
+		for (AgoraSession session : sessions.values()) {
+			session.acknowledged(id);
+		}
+	}
+
+	private static AgoraCodec detectCodec(PushbackInputStream in, AgoraCompression compression, AgoraSession session)
+			throws IOException {
+		byte[] magic = in.readNBytes(2);
+		in.unread(magic);
+		if (magic.length == 2 && ((magic[0] & 0xFF) << 8 | (magic[1] & 0xFF)) == STREAM_MAGIC) {
+			return new SerializationAgoraCodec();
+		}
+		return new BinaryAgoraCodec(compression, session);
+	}
+
+}